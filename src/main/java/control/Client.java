@@ -0,0 +1,193 @@
+package control;
+
+import tools.Memo;
+import tools.MemoTokenizer;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+import static tools.Consts.*;
+
+/**
+ * A client connected to the Server (a Moose device or an observer)
+ * The connection state is only used by the Server's I/O thread; the queue is filled from any thread
+ */
+public class Client {
+    private final static String NAME = "Client/";
+
+    private final int BUFFER_SIZE = 64 * 1024; // Bytes
+
+    public enum ROLE {
+        MOOSE, // Sends the DRAG actions, gets everything (except the telemetry)
+        OBSERVER; // Only watches (gets the LOG and TELEMETRY Memos)
+
+        public static ROLE of(String str) {
+            for (ROLE role : values()) {
+                if (role.name().equals(str)) return role;
+            }
+            return MOOSE;
+        }
+    }
+
+    private final int id;
+    private volatile ROLE role = ROLE.MOOSE; // Until it introduces itself
+    private final SocketAddress address;
+
+    // Connection (only the I/O thread)
+    final SocketChannel channel;
+    final SelectionKey key;
+    final ByteBuffer outBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    byte[] lineBytes = new byte[1024]; // Received line (until \n) or frame
+    int lineLen;
+    boolean binaryIn; // Sends binary Memos (after PROTOCOL)
+    long readTime_us; // When the last data was read (ClockSync time)
+    long lastReadTime_ms = System.currentTimeMillis(); // For the liveness
+    final long connectTime_ms = System.currentTimeMillis();
+    boolean stateSent; // The current state was replayed (after the INTRO, or as Moose if none came)
+
+    // Clock sync (only if the client did the PROTOCOL handshake)
+    final ClockSync clockSync = new ClockSync();
+    boolean syncEnabled;
+    long nextPingTime_ms;
+    int nPings;
+
+    final OutboundQueue outQueue; // Memos to send (filled from any thread)
+
+    // Datagrams (touch samples over UDP)
+    private static final int UDP_WINDOW = 1024; // Seqs (under the highest) checked for duplicates
+    private final long[] udpSeen = new long[UDP_WINDOW / 64]; // Bit per seq (mod the window)
+    private long udpFirstSeq = -1;
+    private volatile long udpHighestSeq = -1;
+    private volatile long udpReceived; // Not counting the duplicates
+    private volatile long udpReordered; // Arrived after a later one
+    private volatile long udpDuplicated;
+    private volatile long udpMalformed;
+
+    //----------------------------------------------------------------------------------------
+
+    Client(int id, SocketChannel channel, SelectionKey key, OutboundQueue outQueue) {
+        this.id = id;
+        this.channel = channel;
+        this.key = key;
+        this.outQueue = outQueue;
+        this.address = channel.socket().getRemoteSocketAddress();
+    }
+
+    /**
+     * Check if the client gets a Memo (routing by the action)
+     * @param memo Memo
+     * @return True if it should be sent to this client
+     */
+    boolean accepts(Memo memo) {
+        return switch (role) {
+            case MOOSE -> !memo.getAction().equals(STRINGS.TELEMETRY);
+            case OBSERVER -> memo.getAction().equals(STRINGS.LOG) || memo.getAction().equals(STRINGS.CONNECTION)
+                    || memo.getAction().equals(STRINGS.TELEMETRY);
+        };
+    }
+
+    /**
+     * Set the role (from the INTRO Memo)
+     * @param memo INTRO Memo (value1: role, Moose if not set)
+     */
+    void introduce(MemoTokenizer memo) {
+        role = memo.hasValue(1) ? ROLE.of(memo.getStrValue(1)) : ROLE.MOOSE;
+    }
+
+    /**
+     * Count a received datagram (only the I/O thread)
+     * @param seq Sequence number
+     * @return True if new, false if a duplicate (to drop)
+     */
+    boolean countDatagram(long seq) {
+        if (udpHighestSeq < 0 || seq > udpHighestSeq) {
+            if (udpFirstSeq < 0) udpFirstSeq = seq;
+            // The skipped seqs (and the new one) take the bits of the old ones
+            final long from = (udpHighestSeq < 0) ? seq : udpHighestSeq + 1;
+            for (long s = Math.max(from, seq - UDP_WINDOW + 1); s <= seq; s++) setSeen(s, false);
+            setSeen(seq, true);
+            udpHighestSeq = seq;
+        } else if (udpHighestSeq - seq >= UDP_WINDOW) { // Too old to check
+            udpReordered++;
+        } else if (isSeen(seq)) {
+            udpDuplicated++;
+            return false;
+        } else {
+            setSeen(seq, true);
+            udpReordered++;
+        }
+
+        udpReceived++;
+        return true;
+    }
+
+    /**
+     * Count a datagram of this client that couldn't be read (dropped)
+     */
+    void countMalformedDatagram() {
+        udpMalformed++;
+    }
+
+    private boolean isSeen(long seq) {
+        final int bit = (int) (seq % UDP_WINDOW);
+        return (udpSeen[bit >> 6] & (1L << bit)) != 0;
+    }
+
+    private void setSeen(long seq, boolean seen) {
+        final int bit = (int) (seq % UDP_WINDOW);
+        if (seen) udpSeen[bit >> 6] |= 1L << bit;
+        else udpSeen[bit >> 6] &= ~(1L << bit);
+    }
+
+    public long getUdpReceived() {
+        return udpReceived;
+    }
+
+    /**
+     * Get the number of lost datagrams (gaps in the sequence numbers)
+     * @return Number of datagrams
+     */
+    public long getUdpLost() {
+        final long highest = udpHighestSeq;
+        return (highest < 0) ? 0 : Math.max(0, highest - udpFirstSeq + 1 - udpReceived);
+    }
+
+    public long getUdpReordered() {
+        return udpReordered;
+    }
+
+    public long getUdpDuplicated() {
+        return udpDuplicated;
+    }
+
+    public long getUdpMalformed() {
+        return udpMalformed;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public ROLE getRole() {
+        return role;
+    }
+
+    public SocketAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * Get the round-trip time (smoothed)
+     * @return RTT (ms), -1 if unknown
+     */
+    public double getRtt_ms() {
+        return clockSync.getRtt_ms();
+    }
+
+    @Override
+    public String toString() {
+        return NAME + id + "[" + role + " " + address + "]";
+    }
+}
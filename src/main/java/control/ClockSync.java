@@ -0,0 +1,108 @@
+package control;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Round-trip time and clock offset between the PC and Moose (NTP-style, from PING/PONG exchanges)
+ * PING carries the PC send time (t1); PONG echoes it with the Moose time when it replied (t2)
+ * On receiving the PONG (t4): rtt = t4 - t1, offset = t2 - (t1 + t4) / 2 (Moose clock - PC clock)
+ * Both are smoothed (EWMA). Samples with a much larger rtt than usual (queued somewhere) don't change the offset
+ */
+public class ClockSync {
+    private final static String NAME = "ClockSync/";
+
+    private final double ALPHA = 0.125; // Weight of a new sample
+    private final double MAX_RTT_RATIO = 2.0; // Samples with larger rtt (than the smoothed one) are outliers
+    private final double MIN_RTT_LIMIT_ms = 2.0;
+
+    // Base of the hi-res PC clock (epoch ms, at the resolution of nanoTime)
+    // Re-based if it drifts from currentTimeMillis (same clock as the other logged times)
+    private static final long MAX_DRIFT_ms = 2;
+    private static volatile long[] sBase = { System.currentTimeMillis(), System.nanoTime() };
+    private static final AtomicLong sLastTime_us = new AtomicLong(); // Never goes back (re-base can step back)
+
+    private volatile double mRtt_ms = -1; // -1 => no sample yet
+    private volatile double mOffset_ms;
+    private volatile long mSampleCount;
+
+    // -------------------------------------------------------------------------------------------
+
+    /**
+     * Get the PC time (epoch, hi-res; same clock as the PING times)
+     * Never decreases (the times are subtracted from each other): after a step back, stays until caught up
+     * @return Time (microseconds)
+     */
+    public static long nowMicros() {
+        long[] base = sBase;
+        final long nowNs = System.nanoTime();
+        final long nowMs = System.currentTimeMillis();
+        if (Math.abs(base[0] + (nowNs - base[1]) / 1_000_000 - nowMs) > MAX_DRIFT_ms) {
+            base = new long[] { nowMs, nowNs };
+            sBase = base;
+        }
+
+        final long time = base[0] * 1000 + (nowNs - base[1]) / 1000;
+        return sLastTime_us.accumulateAndGet(time, Math::max);
+    }
+
+    /**
+     * Add the result of a PING/PONG (only from one thread)
+     * @param pingTime_us PC time when the PING was sent (t1)
+     * @param mooseTime_ms Moose time when the PONG was sent (t2)
+     * @param pongTime_us PC time when the PONG was received (t4)
+     */
+    public void addSample(long pingTime_us, double mooseTime_ms, long pongTime_us) {
+        final double rtt = (pongTime_us - pingTime_us) / 1000.0;
+        final double offset = mooseTime_ms - (pingTime_us + pongTime_us) / 2000.0;
+        if (rtt < 0) return;
+
+        if (mSampleCount == 0) {
+            mRtt_ms = rtt;
+            mOffset_ms = offset;
+        } else {
+            if (rtt <= Math.max(MAX_RTT_RATIO * mRtt_ms, MIN_RTT_LIMIT_ms)) {
+                mOffset_ms += ALPHA * (offset - mOffset_ms);
+            }
+            mRtt_ms += ALPHA * (rtt - mRtt_ms);
+        }
+        mSampleCount++;
+    }
+
+    /**
+     * Forget the samples (e.g., Moose reconnected)
+     */
+    public void reset() {
+        mSampleCount = 0;
+        mRtt_ms = -1;
+        mOffset_ms = 0;
+    }
+
+    /**
+     * Get the smoothed round-trip time
+     * @return RTT (ms), -1 if no sample yet
+     */
+    public double getRtt_ms() {
+        return mRtt_ms;
+    }
+
+    /**
+     * Get the smoothed clock offset (Moose clock - PC clock)
+     * @return Offset (ms)
+     */
+    public double getOffset_ms() {
+        return mOffset_ms;
+    }
+
+    /**
+     * Translate a Moose time to the PC clock (with the smoothed offset)
+     * @param mooseTime_ms Moose time (ms)
+     * @return PC time (ms)
+     */
+    public double toPcTime_ms(double mooseTime_ms) {
+        return mooseTime_ms - mOffset_ms;
+    }
+
+    public long getSampleCount() {
+        return mSampleCount;
+    }
+}
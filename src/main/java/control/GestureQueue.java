@@ -0,0 +1,164 @@
+package control;
+
+import tools.Memo;
+
+import javax.swing.*;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Moves the Moose actions from the Server's I/O thread to the EDT (where the panels and the mouse handlers run)
+ * The actions are numbered and queued; one invokeLater drains all the waiting ones in order
+ * Keeps the queueing delay (received on the I/O thread > dispatched on the EDT)
+ */
+public class GestureQueue implements MooseListener {
+    private final static String NAME = "GestureQueue/";
+
+    public enum TYPE {
+        GRAB, RELEASE, REVERT, MOVE
+    }
+
+    //-- A queued action
+    private static class Gesture {
+        final long seq;
+        final TYPE type;
+        final int clientId;
+        final long eventTime; // When it happened on Moose (PC clock, ms)
+        final long receiveTime; // When the PC received it (ms)
+        final double dX, dY; // MOVE
+        final long enqueueTime; // ns
+
+        Gesture(long seq, TYPE type, int clientId, long eventTime, long receiveTime, double dX, double dY) {
+            this.seq = seq;
+            this.type = type;
+            this.clientId = clientId;
+            this.eventTime = eventTime;
+            this.receiveTime = receiveTime;
+            this.dX = dX;
+            this.dY = dY;
+            enqueueTime = System.nanoTime();
+        }
+    }
+
+    private final MooseListener mTarget; // Called on the EDT
+    private final Queue<Gesture> mQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean mDrainScheduled = new AtomicBoolean();
+    private long mNextSeq; // Only the I/O thread
+
+    // Stats (written only by the EDT)
+    private volatile long mLastSeq = -1; // Last dispatched
+    private volatile long mDispatchCount;
+    private volatile long mTotalDelay_ns;
+    private volatile long mMaxDelay_ns;
+    private volatile int mMaxBatch;
+
+    // -------------------------------------------------------------------------------------------
+
+    /**
+     * Constructor
+     * @param target Gets the actions on the EDT
+     */
+    public GestureQueue(MooseListener target) {
+        mTarget = target;
+    }
+
+    /**
+     * Queue an action and schedule the drain (if not already)
+     */
+    private void enqueue(TYPE type, int clientId, long eventTime, long receiveTime, double dX, double dY) {
+        mQueue.offer(new Gesture(mNextSeq++, type, clientId, eventTime, receiveTime, dX, dY));
+        if (mDrainScheduled.compareAndSet(false, true)) SwingUtilities.invokeLater(this::drain);
+    }
+
+    /**
+     * Dispatch all the waiting actions, in order (on the EDT)
+     */
+    private void drain() {
+        mDrainScheduled.set(false); // Actions queued from now on get another drain
+
+        int batch = 0;
+        Gesture gesture;
+        while ((gesture = mQueue.poll()) != null) {
+            final long delay = System.nanoTime() - gesture.enqueueTime;
+            mTotalDelay_ns += delay;
+            if (delay > mMaxDelay_ns) mMaxDelay_ns = delay;
+            mDispatchCount++;
+            mLastSeq = gesture.seq;
+            batch++;
+
+            switch (gesture.type) {
+                case GRAB -> mTarget.grab(gesture.clientId, gesture.eventTime, gesture.receiveTime);
+                case RELEASE -> mTarget.release(gesture.clientId, gesture.eventTime, gesture.receiveTime);
+                case REVERT -> mTarget.revert(gesture.clientId, gesture.eventTime, gesture.receiveTime);
+                case MOVE -> mTarget.move(gesture.clientId, gesture.dX, gesture.dY,
+                        gesture.eventTime, gesture.receiveTime);
+            }
+        }
+
+        if (batch > mMaxBatch) mMaxBatch = batch;
+    }
+
+    @Override
+    public List<Memo> getStateMemos() {
+        return mTarget.getStateMemos();
+    }
+
+    @Override
+    public void grab(int clientId, long eventTime, long receiveTime) {
+        enqueue(TYPE.GRAB, clientId, eventTime, receiveTime, 0, 0);
+    }
+
+    @Override
+    public void release(int clientId, long eventTime, long receiveTime) {
+        enqueue(TYPE.RELEASE, clientId, eventTime, receiveTime, 0, 0);
+    }
+
+    @Override
+    public void revert(int clientId, long eventTime, long receiveTime) {
+        enqueue(TYPE.REVERT, clientId, eventTime, receiveTime, 0, 0);
+    }
+
+    @Override
+    public void move(int clientId, double dX, double dY, long eventTime, long receiveTime) {
+        enqueue(TYPE.MOVE, clientId, eventTime, receiveTime, dX, dY);
+    }
+
+    /**
+     * Get the sequence number of the last dispatched action
+     * @return Sequence number (-1 if none)
+     */
+    public long getLastSeq() {
+        return mLastSeq;
+    }
+
+    public long getDispatchCount() {
+        return mDispatchCount;
+    }
+
+    /**
+     * Get the mean queueing delay (received > dispatched on the EDT)
+     * @return Delay (microseconds)
+     */
+    public double getMeanDelay_us() {
+        final long count = mDispatchCount;
+        return (count == 0) ? 0 : mTotalDelay_ns / 1000.0 / count;
+    }
+
+    /**
+     * Get the max queueing delay
+     * @return Delay (microseconds)
+     */
+    public double getMaxDelay_us() {
+        return mMaxDelay_ns / 1000.0;
+    }
+
+    /**
+     * Get the largest number of actions dispatched in one go
+     * @return Batch size
+     */
+    public int getMaxBatch() {
+        return mMaxBatch;
+    }
+}
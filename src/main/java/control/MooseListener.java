@@ -0,0 +1,37 @@
+package control;
+
+import tools.Memo;
+
+import java.util.List;
+
+/**
+ * Receiver of the Moose actions from the Server (MainFrame in the experiment, MooseSimulator in the load tests)
+ * Called on the Server's I/O thread
+ */
+public interface MooseListener {
+
+    /**
+     * Get the Memos that bring a (re)connected client to the current state (e.g., technique, exp_id)
+     * @return List of Memos (in order)
+     */
+    List<Memo> getStateMemos();
+
+    /**
+     * Moose actions
+     * @param clientId Id of the client that sent it
+     * @param eventTime When it happened on Moose (PC clock, ms)
+     * @param receiveTime When the PC received it (ms)
+     */
+    void grab(int clientId, long eventTime, long receiveTime);
+
+    void release(int clientId, long eventTime, long receiveTime);
+
+    void revert(int clientId, long eventTime, long receiveTime);
+
+    /**
+     * Finger movement on Moose (high rate, may come over UDP => some may be lost)
+     * @param dX Delta X
+     * @param dY Delta Y
+     */
+    default void move(int clientId, double dX, double dY, long eventTime, long receiveTime) {}
+}
@@ -0,0 +1,425 @@
+package control;
+
+import tools.Memo;
+import tools.MemoCodec;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static tools.Consts.*;
+
+/**
+ * Headless Moose simulator and Server load generator (over loopback, no phone needed)
+ * Starts the Server in this process, connects the simulated Moose clients and plays DRAG actions
+ * (scripted or random, fixed seed) at a fixed rate. Reports the latency percentiles from the wire
+ * (Memo written to the socket) to the dispatch by the Server (listener called on the I/O thread) and to
+ * the handling on the EDT (through a GestureQueue, like MainFrame), and the queueing delay (I/O thread > EDT)
+ * With -udp, plays DRAG&MOVE touch samples over UDP instead (and reports the loss/reorder)
+ * Usage: MooseSimulator [-clients N] [-rate Memos/s] [-count N] [-warmup N] [-seed S]
+ *                       [-script GRAB,RELEASE,...] [-binary] [-udp] [-maxP99 us]
+ * Exits with 1 if the p99 (wire to EDT) is over maxP99 (for CI)
+ */
+public class MooseSimulator implements MooseListener {
+    private final static String NAME = "MooseSimulator/";
+
+    private final static String HOST = "localhost";
+    private final static int PORT = 8000;
+    private final static long DONE_TIMEOUT_ms = 10_000;
+    private final static long QUIET_TIME_ms = 500;
+
+    // Options
+    private int nClients = 1;
+    private int rate = 500; // Memos/s (all the clients)
+    private int count = 20_000;
+    private int warmup = 2_000; // Not in the results (JIT)
+    private long seed = 42;
+    private String[] script; // null => random
+    private boolean binary; // Binary Memos (PROTOCOL handshake, answers the PINGs)
+    private boolean udp; // MOVE samples over UDP (needs binary)
+    private double maxP99_us = -1;
+
+    private final Map<Integer, SimClient> clientsById = new ConcurrentHashMap<>();
+    private GestureQueue gestureQueue;
+    private long[] dispatchLatencies_ns;
+    private long[] edtLatencies_ns;
+    private int nHandled; // Only the EDT
+    private CountDownLatch done;
+
+    //-- A simulated Moose
+    private class SimClient implements Runnable {
+        final SocketChannel channel;
+        final Queue<Long> times = new ConcurrentLinkedQueue<>(); // Of the gestures not yet handled (in order)
+        final Queue<Long> dispatchTimes = new ConcurrentLinkedQueue<>(); // When the Server dispatched them
+        long[] udpTimes; // Of the samples (by seq; some may be lost)
+        long[] udpDispatchTimes;
+        int id; // Server's id of this client (from the order of connections)
+        volatile boolean binaryOut; // After the PROTOCOL reply
+        volatile int udpPort = -1; // From the UDP Memo
+        DatagramChannel udpChannel;
+        int udpSeq;
+
+        SimClient() throws IOException {
+            channel = SocketChannel.open(new InetSocketAddress(HOST, PORT));
+            channel.socket().setTcpNoDelay(true);
+        }
+
+        /**
+         * Send a Memo (text or binary)
+         * @param memo Memo
+         * @return Time when it was written (ns)
+         */
+        synchronized long send(Memo memo) throws IOException {
+            final byte[] bytes = binaryOut
+                    ? MemoCodec.encode(memo)
+                    : (memo + "\n").getBytes(StandardCharsets.UTF_8);
+            final ByteBuffer bb = ByteBuffer.wrap(bytes);
+            while (bb.hasRemaining()) channel.write(bb);
+
+            return System.nanoTime();
+        }
+
+        /**
+         * Read the Server's Memos (answers the PINGs)
+         */
+        @Override
+        public void run() {
+            try {
+                final DataInputStream in = new DataInputStream(new BufferedInputStream(
+                        channel.socket().getInputStream()));
+                boolean binaryIn = false;
+                while (true) {
+                    final Memo memo;
+                    if (binaryIn) {
+                        final byte[] frame = new byte[in.readUnsignedShort()];
+                        in.readFully(frame);
+                        memo = MemoCodec.decode(ByteBuffer.wrap(frame));
+                    } else {
+                        memo = Memo.valueOf(readLine(in));
+                    }
+
+                    if (memo.getMode().equals(STRINGS.PROTOCOL)) {
+                        binaryIn = memo.getIntValue(1) > 0;
+                        binaryOut = binaryIn;
+                    }
+                    if (memo.getMode().equals(STRINGS.UDP)) udpPort = memo.getIntValue(1);
+                    if (memo.getMode().equals(STRINGS.PING)) {
+                        send(new Memo(STRINGS.CONNECTION, STRINGS.PONG,
+                                memo.getRawValue(1), ClockSync.nowMicros() / 1000.0));
+                    }
+                }
+            } catch (IOException e) {
+                // Closed
+            }
+        }
+
+        /**
+         * Send a touch sample over UDP
+         * @param memo DRAG&MOVE Memo
+         */
+        void sendDatagram(Memo memo) throws IOException {
+            if (udpChannel == null) udpChannel = DatagramChannel.open().connect(new InetSocketAddress(HOST, udpPort));
+
+            final byte[] frame = MemoCodec.encode(memo);
+            final ByteBuffer bb = ByteBuffer.allocate(4 + 4 + 8 + frame.length);
+            bb.putInt(id).putInt(udpSeq++).putDouble(ClockSync.nowMicros() / 1000.0).put(frame);
+            udpChannel.write(bb.flip());
+        }
+
+        private String readLine(DataInputStream in) throws IOException {
+            final StringBuilder sb = new StringBuilder();
+            int b;
+            while ((b = in.read()) != '\n') {
+                if (b < 0) throw new EOFException();
+                sb.append((char) b);
+            }
+            return sb.toString();
+        }
+    }
+
+    //-- Stamps the dispatch time (on the Server's I/O thread), then passes on to the GestureQueue
+    private class DispatchStamper implements MooseListener {
+        final MooseListener target;
+
+        DispatchStamper(MooseListener target) {
+            this.target = target;
+        }
+
+        private void stamp(int clientId) {
+            final SimClient client = clientsById.get(clientId);
+            if (client != null) client.dispatchTimes.add(System.nanoTime());
+        }
+
+        @Override
+        public List<Memo> getStateMemos() {
+            return target.getStateMemos();
+        }
+
+        @Override
+        public void grab(int clientId, long eventTime, long receiveTime) {
+            stamp(clientId);
+            target.grab(clientId, eventTime, receiveTime);
+        }
+
+        @Override
+        public void release(int clientId, long eventTime, long receiveTime) {
+            stamp(clientId);
+            target.release(clientId, eventTime, receiveTime);
+        }
+
+        @Override
+        public void revert(int clientId, long eventTime, long receiveTime) {
+            stamp(clientId);
+            target.revert(clientId, eventTime, receiveTime);
+        }
+
+        @Override
+        public void move(int clientId, double dX, double dY, long eventTime, long receiveTime) {
+            final SimClient client = clientsById.get(clientId);
+            if (client != null) client.udpDispatchTimes[(int) dX] = System.nanoTime();
+            target.move(clientId, dX, dY, eventTime, receiveTime);
+        }
+    }
+
+    //----------------------------------------------------------------------------------------
+
+    /**
+     * Run the simulation
+     * @param args Options (see the class doc)
+     */
+    public static void main(String[] args) throws Exception {
+        final MooseSimulator simulator = new MooseSimulator();
+        simulator.parse(args);
+        final boolean passed = simulator.run();
+
+        Server.get().close();
+        System.exit(passed ? 0 : 1);
+    }
+
+    private void parse(String[] args) {
+        for (int ai = 0; ai < args.length; ai++) {
+            switch (args[ai]) {
+                case "-clients" -> nClients = Integer.parseInt(args[++ai]);
+                case "-rate" -> rate = Integer.parseInt(args[++ai]);
+                case "-count" -> count = Integer.parseInt(args[++ai]);
+                case "-warmup" -> warmup = Integer.parseInt(args[++ai]);
+                case "-seed" -> seed = Long.parseLong(args[++ai]);
+                case "-script" -> script = args[++ai].split(",");
+                case "-binary" -> binary = true;
+                case "-udp" -> udp = binary = true;
+                case "-maxP99" -> maxP99_us = Double.parseDouble(args[++ai]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[ai]);
+            }
+        }
+    }
+
+    /**
+     * Connect the clients, play the gestures and print the results
+     * @return True if passed (p99 under the limit, all handled)
+     */
+    private boolean run() throws Exception {
+        gestureQueue = new GestureQueue(this);
+        Server.get().setListener(new DispatchStamper(gestureQueue));
+        Server.get().setUdpEnabled(udp);
+        Server.get().start();
+
+        final List<SimClient> clients = new ArrayList<>();
+        for (int ci = 0; ci < nClients; ci++) {
+            final SimClient client = new SimClient();
+            client.send(new Memo(STRINGS.CONNECTION, STRINGS.INTRO, Client.ROLE.MOOSE));
+            if (binary) client.send(new Memo(STRINGS.CONNECTION, STRINGS.PROTOCOL, MemoCodec.VERSION));
+
+            final Thread reader = new Thread(client, "SimClient-" + ci);
+            reader.setDaemon(true);
+            reader.start();
+            clients.add(client);
+        }
+
+        // Match the Server's ids (assigned in the order of connection)
+        while (Server.get().getClients().size() < nClients) Thread.sleep(10);
+        for (SimClient client : clients) {
+            while ((binary && !client.binaryOut) || (udp && client.udpPort < 0)) Thread.sleep(10);
+        }
+        final List<Client> serverClients = Server.get().getClients();
+        for (int ci = 0; ci < nClients; ci++) {
+            clients.get(ci).id = serverClients.get(serverClients.size() - nClients + ci).getId();
+            clientsById.put(clients.get(ci).id, clients.get(ci));
+        }
+
+        final int total = warmup + count;
+        dispatchLatencies_ns = new long[total];
+        edtLatencies_ns = new long[total];
+        done = new CountDownLatch(total);
+        for (SimClient client : clients) {
+            client.udpTimes = new long[total];
+            client.udpDispatchTimes = new long[total];
+        }
+
+        // Play at a fixed rate (by the schedule, so a late send doesn't shift the others)
+        final Random random = new Random(seed);
+        final long interval_ns = TimeUnit.SECONDS.toNanos(1) / rate;
+        final long start = System.nanoTime();
+        for (int gi = 0; gi < total; gi++) {
+            final long due = start + gi * interval_ns;
+            long wait;
+            while ((wait = due - System.nanoTime()) > 0) LockSupport.parkNanos(wait); // No spinning (few cores)
+
+            final SimClient client = clients.get(gi % nClients);
+            final String mode = (script != null) ? script[gi % script.length] : randomMode(random);
+            synchronized (client) {
+                client.times.add(System.nanoTime()); // Before the write (the listener may be called before it returns)
+                if (udp) {
+                    // dX: seq (to match the send time)
+                    client.udpTimes[client.udpSeq] = System.nanoTime();
+                    client.sendDatagram(new Memo(STRINGS.DRAG, STRINGS.MOVE, client.udpSeq, random.nextGaussian()));
+                } else {
+                    client.send(new Memo(STRINGS.DRAG, mode, ClockSync.nowMicros() / 1000.0));
+                }
+            }
+        }
+        final double sendDuration_s = (System.nanoTime() - start) / 1e9;
+
+        // Lost datagrams never arrive => only wait until nothing more comes
+        final boolean allHandled = udp ? awaitQuiet() : done.await(DONE_TIMEOUT_ms, TimeUnit.MILLISECONDS);
+
+        // Results
+        System.out.printf("%s clients=%d rate=%d/s count=%d (+%d warmup) seed=%d %s%s%n",
+                NAME, nClients, rate, count, warmup, seed, udp ? "udp" : binary ? "binary" : "text",
+                (script != null) ? " script=" + String.join(",", script) : "");
+        System.out.printf("Sent %.0f Memos/s, handled %d/%d%n",
+                total / sendDuration_s, total - done.getCount(), total);
+        printPercentiles("wire > dispatch", dispatchLatencies_ns);
+        final double edtP99 = printPercentiles("wire > EDT     ", edtLatencies_ns);
+        System.out.printf("Gesture queue (I/O thread > EDT): mean %.1f us, max %.1f us, max batch %d%n",
+                gestureQueue.getMeanDelay_us(), gestureQueue.getMaxDelay_us(), gestureQueue.getMaxBatch());
+        if (udp) {
+            long received = 0, lost = 0, reordered = 0, duplicated = 0, malformed = 0;
+            for (Client client : Server.get().getClients()) {
+                received += client.getUdpReceived();
+                lost += client.getUdpLost();
+                reordered += client.getUdpReordered();
+                duplicated += client.getUdpDuplicated();
+                malformed += client.getUdpMalformed();
+            }
+            System.out.printf("UDP: received %d, lost %d, reordered %d, duplicated %d, malformed %d, stray %d%n",
+                    received, lost, reordered, duplicated, malformed, Server.get().getStrayDatagramCount());
+        }
+        System.out.printf("Server send queue: mean %.1f us, max %.1f us, dropped %d, blocked %d%n",
+                Server.get().getMeanSendLatency_us(), Server.get().getMaxSendLatency_us(),
+                Server.get().getOutDroppedCount(), Server.get().getOutBlockedCount());
+        for (SimClient client : clients) client.channel.close();
+
+        final boolean passed = allHandled && (maxP99_us < 0 || edtP99 <= maxP99_us);
+        if (!passed) System.out.println("FAILED" + (allHandled ? " (p99 > " + maxP99_us + " us)" : " (not all handled)"));
+
+        return passed;
+    }
+
+    /**
+     * Wait until no more samples are handled
+     * @return True (the lost ones are reported separately)
+     */
+    private boolean awaitQuiet() throws InterruptedException {
+        long count;
+        do {
+            count = done.getCount();
+            Thread.sleep(QUIET_TIME_ms);
+        } while (count != done.getCount() && count > 0);
+
+        return true;
+    }
+
+    /**
+     * Random gesture (GRAB more often, like in the tasks)
+     */
+    private String randomMode(Random random) {
+        final int r = random.nextInt(10);
+        if (r < 5) return STRINGS.GRAB;
+        else if (r < 9) return STRINGS.RELEASE;
+        else return STRINGS.REVERT;
+    }
+
+    /**
+     * Print the percentiles of the latencies (after the warmup)
+     * @param label Label
+     * @param latencies_ns Latencies (ns)
+     * @return p99 (us)
+     */
+    private double printPercentiles(String label, long[] latencies_ns) {
+        final long[] sorted = Arrays.copyOfRange(latencies_ns, Math.min(warmup, nHandled), nHandled);
+        Arrays.sort(sorted);
+        if (sorted.length == 0) {
+            System.out.println(label + ": no samples");
+            return 0;
+        }
+
+        final double[] ps = {50, 90, 99, 99.9, 100};
+        final StringBuilder sb = new StringBuilder(label + " (us):");
+        double p99 = 0;
+        for (double p : ps) {
+            final int ind = (int) Math.min(sorted.length - 1, Math.ceil(p / 100 * sorted.length) - 1);
+            final double value = sorted[Math.max(0, ind)] / 1000.0;
+            sb.append(String.format(" p%s=%.1f", (p == 100) ? "max" : String.valueOf(p).replace(".0", ""), value));
+            if (p == 99) p99 = value;
+        }
+        System.out.println(sb);
+
+        return p99;
+    }
+
+    /**
+     * Record a handled gesture (on the EDT)
+     * @param clientId Id of the sender
+     */
+    private void handled(int clientId) {
+        final SimClient client = clientsById.get(clientId);
+        if (client == null) return;
+
+        final Long sendTime = client.times.poll();
+        final Long dispatchTime = client.dispatchTimes.poll(); // Same order (the GestureQueue keeps it)
+        if (sendTime != null && dispatchTime != null) handled(sendTime, dispatchTime);
+    }
+
+    private void handled(long sendTime, long dispatchTime) {
+        if (nHandled >= edtLatencies_ns.length) return;
+
+        dispatchLatencies_ns[nHandled] = dispatchTime - sendTime;
+        edtLatencies_ns[nHandled++] = System.nanoTime() - sendTime;
+        done.countDown();
+    }
+
+    @Override
+    public List<Memo> getStateMemos() {
+        return List.of(new Memo(STRINGS.CONFIG, STRINGS.TECH, "SIMULATOR"));
+    }
+
+    @Override
+    public void grab(int clientId, long eventTime, long receiveTime) {
+        handled(clientId);
+    }
+
+    @Override
+    public void release(int clientId, long eventTime, long receiveTime) {
+        handled(clientId);
+    }
+
+    @Override
+    public void revert(int clientId, long eventTime, long receiveTime) {
+        handled(clientId);
+    }
+
+    @Override
+    public void move(int clientId, double dX, double dY, long eventTime, long receiveTime) {
+        final SimClient client = clientsById.get(clientId);
+        if (client != null) handled(client.udpTimes[(int) dX], client.udpDispatchTimes[(int) dX]);
+    }
+}
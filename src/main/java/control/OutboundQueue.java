@@ -0,0 +1,306 @@
+package control;
+
+import tools.Memo;
+import tools.MemoCodec;
+import tools.Out;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import static tools.Consts.*;
+
+/**
+ * FIFO queue of the Memos to send (filled from any thread, drained by the I/O thread)
+ * The I/O thread encodes all the waiting Memos (text or binary) into its buffer => one write per batch
+ * Keeps the depth and the enqueue-to-wire latency (until the last byte of a Memo is written to the socket)
+ * Bounded (about the capacity): when full, waits or drops by the FULL_POLICY. Only the TELEMETRY and PING Memos
+ * are droppable; the others (CONFIG, LOG, the CONNECTION control) go over the capacity, so nothing else is lost
+ * A PING replaces the one still waiting (a stale PING is useless for the clock sync)
+ */
+public class OutboundQueue {
+    private final static String NAME = "OutboundQueue/";
+
+    private final long FULL_WAIT_ns = 50_000; // Wait between retries when full (BLOCK)
+    private final long MAX_BLOCK_ns = 20_000_000; // Then as DROP_OLDEST (a stalled client can't hold the sender)
+
+    private static final Set<String> DROPPABLE = Set.of(STRINGS.TELEMETRY); // Actions (+ CONNECTION&PING)
+
+    public enum FULL_POLICY {
+        BLOCK, // Wait for room (up to MAX_BLOCK, never on the I/O thread)
+        DROP_OLDEST // Drop the oldest droppable Memo
+    }
+
+    //-- A queued Memo
+    private static class Entry {
+        final Memo memo;
+        final Boolean switchToBinary; // Form of the Memos after this one (null => no change)
+        final boolean droppable;
+        final long enqueueTime; // ns
+        byte[] bytes;
+        long end; // Position of the last byte in the sent stream
+
+        Entry(Memo memo, Boolean switchToBinary) {
+            this.memo = memo;
+            this.switchToBinary = switchToBinary;
+            droppable = DROPPABLE.contains(memo.getAction()) || isPing(memo);
+            enqueueTime = System.nanoTime();
+        }
+    }
+
+    private static boolean isPing(Memo memo) {
+        return memo.getAction().equals(STRINGS.CONNECTION) && memo.getMode().equals(STRINGS.PING);
+    }
+
+    private final Queue<Entry> mQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicReference<Entry> mWaitingPing = new AtomicReference<>(); // Queued, not yet taken
+    private final AtomicInteger mDepth = new AtomicInteger(); // Queued, not yet written
+    private final int mCapacity;
+    private volatile FULL_POLICY mFullPolicy;
+    private volatile boolean mStalled; // A wait timed out => no more waiting until it drains
+
+    // Only the I/O thread
+    private final ArrayDeque<Entry> mInBuffer = new ArrayDeque<>(); // Put in the buffer, not yet written
+    private Entry mCurrent; // Partly put in the buffer (larger than the buffer)
+    private int mCurrentOffset;
+    private long mPutBytes;
+    private long mWrittenBytes;
+    private boolean mBinary; // Form of the Memos (MemoCodec or text)
+
+    // Stats (written only by the I/O thread)
+    private volatile long mSentCount;
+    private volatile long mTotalLatency_ns;
+    private volatile long mMaxLatency_ns;
+    private final AtomicLong mDroppedCount = new AtomicLong();
+    private final AtomicLong mBlockedCount = new AtomicLong();
+    private final AtomicLong mOversizedCount = new AtomicLong(); // Too long to encode (also in dropped)
+    private final AtomicLong mCoalescedCount = new AtomicLong(); // PINGs replaced by newer ones
+
+    // -------------------------------------------------------------------------------------------
+
+    /**
+     * Constructor
+     * @param capacity Max number of waiting Memos (except the never-drop ones)
+     * @param fullPolicy What to do when full
+     */
+    public OutboundQueue(int capacity, FULL_POLICY fullPolicy) {
+        mCapacity = capacity;
+        mFullPolicy = fullPolicy;
+    }
+
+    public void setFullPolicy(FULL_POLICY fullPolicy) {
+        mFullPolicy = fullPolicy;
+    }
+
+    /**
+     * Queue a Memo
+     * @param memo Memo
+     * @param mayBlock Can the caller wait if full (BLOCK)? False on the I/O thread
+     * @return True if queued, false if dropped
+     */
+    public boolean offer(Memo memo, boolean mayBlock) {
+        final Entry entry = new Entry(memo, null);
+        if (!isPing(memo)) return enqueue(entry, mayBlock);
+
+        // Replace the waiting PING (if the I/O thread took it meanwhile, remove() fails => both are sent)
+        final Entry waiting = mWaitingPing.getAndSet(entry);
+        if (waiting != null && mQueue.remove(waiting)) {
+            mDepth.decrementAndGet();
+            mCoalescedCount.incrementAndGet();
+        }
+
+        if (enqueue(entry, mayBlock)) return true;
+        mWaitingPing.compareAndSet(entry, null);
+        return false;
+    }
+
+    /**
+     * Queue a Memo and change the form of the Memos after it (e.g., the PROTOCOL reply)
+     * @param memo Memo (sent in the current form, never dropped)
+     * @param binary True => binary (MemoCodec), false => text
+     */
+    public void offerSwitch(Memo memo, boolean binary) {
+        mDepth.incrementAndGet();
+        mQueue.offer(new Entry(memo, binary));
+    }
+
+    private boolean enqueue(Entry entry, boolean mayBlock) {
+        if (entry.droppable && mDepth.get() >= mCapacity && !makeRoom(mayBlock)) {
+            mDroppedCount.incrementAndGet();
+            return false;
+        }
+
+        mDepth.incrementAndGet();
+        mQueue.offer(entry);
+        return true;
+    }
+
+    /**
+     * Wait until there is room (BLOCK) or drop the oldest droppable Memo
+     * @param mayBlock Can wait?
+     * @return True if there is room now (false => only never-drop Memos waiting)
+     */
+    private boolean makeRoom(boolean mayBlock) {
+        if (mFullPolicy == FULL_POLICY.BLOCK && mayBlock && !mStalled) {
+            mBlockedCount.incrementAndGet();
+            final long deadline = System.nanoTime() + MAX_BLOCK_ns;
+            while (mDepth.get() >= mCapacity && System.nanoTime() < deadline) LockSupport.parkNanos(FULL_WAIT_ns);
+            if (mDepth.get() < mCapacity) return true;
+            mStalled = true;
+        }
+
+        for (Entry queued : mQueue) {
+            // Might be taken by the I/O thread meanwhile => remove() fails, try the next
+            if (queued.droppable && mQueue.remove(queued)) {
+                mWaitingPing.compareAndSet(queued, null);
+                mDepth.decrementAndGet();
+                mDroppedCount.incrementAndGet();
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Put the waiting Memos (in order) in a buffer, as much as it fits (only the I/O thread)
+     * @param buffer ByteBuffer (in write mode)
+     */
+    public void fill(ByteBuffer buffer) {
+        while (buffer.hasRemaining()) {
+            if (mCurrent == null) {
+                mCurrent = mQueue.poll();
+                if (mCurrent == null) return;
+                mWaitingPing.compareAndSet(mCurrent, null);
+                mCurrentOffset = 0;
+
+                try {
+                    mCurrent.bytes = mBinary
+                            ? MemoCodec.encode(mCurrent.memo)
+                            : (mCurrent.memo + "\n").getBytes(StandardCharsets.UTF_8);
+                } catch (IllegalArgumentException e) { // Too long for a frame => dropped
+                    Out.e(NAME, "Dropped: " + e.getMessage());
+                    mOversizedCount.incrementAndGet();
+                    mDroppedCount.incrementAndGet();
+                    mDepth.decrementAndGet();
+                    if (mCurrent.switchToBinary != null) mBinary = mCurrent.switchToBinary;
+                    mCurrent = null;
+                    continue;
+                }
+                if (mCurrent.switchToBinary != null) mBinary = mCurrent.switchToBinary;
+            }
+
+            final int n = Math.min(buffer.remaining(), mCurrent.bytes.length - mCurrentOffset);
+            buffer.put(mCurrent.bytes, mCurrentOffset, n);
+            mCurrentOffset += n;
+            mPutBytes += n;
+
+            if (mCurrentOffset == mCurrent.bytes.length) {
+                mCurrent.end = mPutBytes;
+                mInBuffer.add(mCurrent);
+                mCurrent = null;
+            }
+        }
+    }
+
+    /**
+     * Report the bytes written to the socket (only the I/O thread)
+     * @param nBytes Number of bytes
+     */
+    public void written(int nBytes) {
+        mWrittenBytes += nBytes;
+
+        final long now = System.nanoTime();
+        while (!mInBuffer.isEmpty() && mInBuffer.peek().end <= mWrittenBytes) {
+            final long latency = now - mInBuffer.poll().enqueueTime;
+            mTotalLatency_ns += latency;
+            if (latency > mMaxLatency_ns) mMaxLatency_ns = latency;
+            mSentCount++;
+            mDepth.decrementAndGet();
+        }
+        if (mStalled && mDepth.get() < mCapacity) mStalled = false;
+    }
+
+    /**
+     * Discard all the waiting Memos (e.g., disconnected) (only the I/O thread)
+     */
+    public void clear() {
+        while (mQueue.poll() != null) mDepth.decrementAndGet();
+        mWaitingPing.set(null);
+
+        mDepth.addAndGet(-mInBuffer.size() - (mCurrent != null ? 1 : 0));
+        mInBuffer.clear();
+        mCurrent = null;
+        mPutBytes = 0;
+        mWrittenBytes = 0;
+        mBinary = false;
+    }
+
+    /**
+     * Get the number of Memos not yet written to the socket
+     * @return Depth
+     */
+    public int getDepth() {
+        return mDepth.get();
+    }
+
+    public long getSentCount() {
+        return mSentCount;
+    }
+
+    /**
+     * Get the number of Memos dropped because the queue was full
+     * @return Dropped count
+     */
+    public long getDroppedCount() {
+        return mDroppedCount.get();
+    }
+
+    /**
+     * Get the number of Memos dropped because they were too long for a frame
+     * @return Oversized count
+     */
+    public long getOversizedCount() {
+        return mOversizedCount.get();
+    }
+
+    /**
+     * Get the number of PINGs replaced by newer ones before being sent
+     * @return Coalesced count
+     */
+    public long getCoalescedCount() {
+        return mCoalescedCount.get();
+    }
+
+    /**
+     * Get the number of times a sender waited for room (BLOCK)
+     * @return Blocked count
+     */
+    public long getBlockedCount() {
+        return mBlockedCount.get();
+    }
+
+    /**
+     * Get the mean enqueue-to-wire latency
+     * @return Latency (microseconds)
+     */
+    public double getMeanLatency_us() {
+        final long count = mSentCount;
+        return (count == 0) ? 0 : mTotalLatency_ns / 1000.0 / count;
+    }
+
+    /**
+     * Get the max enqueue-to-wire latency
+     * @return Latency (microseconds)
+     */
+    public double getMaxLatency_us() {
+        return mMaxLatency_ns / 1000.0;
+    }
+}
@@ -1,15 +1,21 @@
 package control;
 
-import experiment.Experiment;
-import log.Logger;
-import panels.MainFrame;
 import tools.Out;
+import tools.Utils;
 import tools.Memo;
+import tools.MemoCodec;
+import tools.MemoTokenizer;
 
 import java.io.*;
 import java.net.*;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.*;
 
 import static tools.Consts.*;
@@ -20,129 +26,331 @@ public class Server {
     private static Server instance; // Singelton
 
     private final int PORT = 8000; // always the same
-    private final int CONNECTION_TIMEOUT = 60 * 1000; // 1 min
-
-    private ServerSocket serverSocket;
-    private Socket socket;
-    private PrintWriter outPW;
-    private BufferedReader inBR;
+    private final int UDP_PORT = PORT; // Touch samples (the same number, on UDP)
+    private final int MAX_DATAGRAM = 1500; // Bytes
+    private final int UDP_RECEIVE_BUFFER = 1024 * 1024; // Bytes (bursts while the I/O thread is busy)
+    private final int DATAGRAM_HEADER = 4 + 4 + 8; // Client id, seq, Moose time (ms, double)
+    private final int CONNECTION_TIMEOUT = 5 * 1000; // No data (incl. PONGs) => dead (only clients that answer PINGs)
+    private final int BUFFER_SIZE = 64 * 1024; // Bytes
+    private final int MAX_LINE_LENGTH = MemoCodec.MAX_FRAME_LENGTH + 2; // Bytes (text line or length + frame)
+    private final int MAX_CLIENTS = 64;
+    private final int OUT_QUEUE_CAPACITY = 1024; // Memos per client (only TELEMETRY/PING are dropped when full)
+    private final int CLOSE_TIMEOUT = 1000; // ms (for sending the remaining messages)
+    private final long PING_INTERVAL_ms = 1000;
+    private final long FAST_PING_INTERVAL_ms = 100; // For the first pings (to converge faster)
+    private final int N_FAST_PINGS = 8;
+    private final long INTRO_WAIT_ms = 1000; // No INTRO by then => legacy Moose (gets the state as Moose)
+
+    // Accept, read and write (of all the clients) happen on the I/O thread
+    private Selector selector;
+    private ServerSocketChannel serverChannel; // Stays open for reconnections
+    private DatagramChannel udpChannel; // Only if enabled
+    private boolean udpEnabled;
+    private Thread ioThread;
+    private volatile boolean closing;
+
+    private final ByteBuffer inBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final ByteBuffer udpBuffer = ByteBuffer.allocate(MAX_DATAGRAM);
+    private final MemoTokenizer inMemo = new MemoTokenizer(); // Received Memo (reused)
+
+    // Connected clients (by id; the first Moose is the primary one)
+    private final ConcurrentSkipListMap<Integer, Client> clients = new ConcurrentSkipListMap<>();
+    private int lastClientId;
+
+    // Current state, replayed to every (re)connected client (CONFIG Memos and the EXP_ID; by action&mode)
+    private final Map<String, Memo> state = new LinkedHashMap<>();
+
+    private volatile MooseListener listener; // Gets the Moose actions (and the state to replay)
+    private volatile WireRecorder recorder; // Captures the traffic (if recording)
+    private volatile long strayDatagrams; // Short or not from a client (only the I/O thread writes)
+    private volatile OutboundQueue.FULL_POLICY outQueuePolicy = OutboundQueue.FULL_POLICY.DROP_OLDEST;
 
     private String mPcDateId;
 
-    private ExecutorService executor;
-
     //----------------------------------------------------------------------------------------
 
-    //-- Runnable for waiting for incoming connections
-    private class ConnectionRunnable implements Runnable {
-        String TAG = NAME + "ConnectionRunnable";
+    //-- Runnable for the I/O (accepting connections, receiving and sending messages)
+    private class IoRunnable implements Runnable {
+        String TAG = NAME + "IoRunnable";
 
         @Override
         public void run() {
+            Out.d(TAG, "Waiting for connections...");
             try {
-                Out.d(TAG, "Waiting for connections...");
-                serverSocket = new ServerSocket(PORT);
-                socket = serverSocket.accept();
-
-                // When reached here, Moose is connected
-                Out.d(TAG, "Moose connected!");
-
-                // Create streams
-                inBR = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-                outPW = new PrintWriter(new BufferedWriter(
-                        new OutputStreamWriter(socket.getOutputStream())), true);
-
-                // Start receiving
-                executor.execute(new InRunnable());
-
-                // Set the active technique/pId
-                send(new Memo(
-                        STRINGS.CONFIG,
-                        STRINGS.TECH,
-                        MainFrame.get().mActiveTechnique));
-
-                // Send the exp_id
-                if (MainFrame.get().mMode.equals(Experiment.MODE.TEST)) {
-                    send(new Memo(
-                            STRINGS.LOG,
-                            STRINGS.EXP_ID,
-                            Logger.get().getLogId()));
-                } else if (MainFrame.get().mMode.equals(Experiment.MODE.PRACTICE)) {
-                    send(new Memo(
-                            STRINGS.LOG,
-                            STRINGS.EXP_ID,
-                            Logger.get().getPracticeLogId()));
+                while (!closing) {
+                    final long nextPingTime = nextPingTime();
+                    if (nextPingTime < Long.MAX_VALUE) selector.select(Math.max(1, nextPingTime - Utils.nowMillis()));
+                    else selector.select();
+
+                    final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        final SelectionKey key = keys.next();
+                        keys.remove();
+
+                        if (!key.isValid()) continue;
+                        if (key.isAcceptable()) accept();
+                        else if (key.channel() == udpChannel) receiveDatagrams();
+                        else if (key.isReadable()) read((Client) key.attachment());
+                    }
+
+                    // Messages sent meanwhile (or remained from before)
+                    for (Client client : clients.values()) {
+                        if (isTimedOut(client)) {
+                            Out.d(TAG, "Timed out: " + client);
+                            disconnect(client);
+                            continue;
+                        }
+
+                        if (!client.stateSent && Utils.nowMillis() - client.connectTime_ms >= INTRO_WAIT_ms) {
+                            sendState(client); // Never introduced itself
+                        }
+                        ping(client);
+                        write(client);
+                    }
                 }
 
+                for (Client client : clients.values()) write(client); // Remaining messages (e.g., END)
             } catch (IOException e) {
                 e.printStackTrace();
+            } finally {
+                closeChannels();
             }
         }
-    }
 
-    //-- Runnable for sending messages to Moose
-    private class OutRunnable implements Runnable {
-        String TAG = NAME + "OutRunnable";
-        Memo message;
+        /**
+         * Accept a connection from a client
+         * @throws IOException If can't accept
+         */
+        private void accept() throws IOException {
+            final SocketChannel channel = serverChannel.accept();
+            if (channel == null) return;
+
+            if (clients.size() >= MAX_CLIENTS) {
+                Out.e(TAG, "Too many clients, rejected " + channel.getRemoteAddress());
+                channel.close();
+                return;
+            }
 
-        public OutRunnable(Memo mssg) {
-            message = mssg;
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+            final SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            final Client client = new Client(++lastClientId, channel, key,
+                    new OutboundQueue(OUT_QUEUE_CAPACITY, outQueuePolicy));
+            key.attach(client);
+            clients.put(client.getId(), client);
+
+            // When reached here, the client is connected (the state is sent after the INTRO, by the role)
+            Out.d(TAG, "Connected: " + client);
         }
 
-        @Override
-        public void run() {
-            if (message != null && outPW != null) {
-                outPW.println(message);
-                outPW.flush();
+        /**
+         * Read the available data of a client and handle the complete messages
+         * @param client Client
+         */
+        private void read(Client client) {
+            try {
+                inBuffer.clear();
+                final int n = client.channel.read(inBuffer);
+                client.readTime_us = ClockSync.nowMicros();
+                client.lastReadTime_ms = client.readTime_us / 1000;
+                if (n < 0) {
+                    Out.d(TAG, "Disconnected: " + client);
+                    disconnect(client);
+                    return;
+                }
+
+                inBuffer.flip();
+                while (inBuffer.hasRemaining() && client.channel.isOpen()) {
+                    if (client.binaryIn) readFrame(client);
+                    else readLine(client);
+                }
+            } catch (IOException e) {
+                System.out.println("Error in reading from " + client);
+                disconnect(client);
+            } catch (RuntimeException e) { // Bad Memo => only this client is dropped (not the I/O thread)
+                Out.e(TAG, "Error in handling a Memo from " + client + ": " + e);
+                disconnect(client);
             }
         }
-    }
 
-    //-- Runnable for receiving messages from Moose
-    private class InRunnable implements Runnable {
-        String TAG = NAME + "InRunnable";
+        /**
+         * Read a text message (until \n), if complete
+         */
+        private void readLine(Client client) {
+            while (inBuffer.hasRemaining()) {
+                final byte b = inBuffer.get();
+                if (b == '\n') {
+                    if (client.lineLen > 0 && client.lineBytes[client.lineLen - 1] == '\r') client.lineLen--;
+                    final boolean valid = inMemo.tokenize(client.lineBytes, 0, client.lineLen);
+                    client.lineLen = 0;
+
+                    if (valid) handle(client, inMemo);
+                    else Out.e(TAG, "Memo NOT 4 parts!");
+                    return; // The form may have changed
+                }
 
-        @Override
-        public void run() {
-            while (!Thread.interrupted() && inBR != null) {
-                try {
-                    Out.d(TAG, "Reading messages...");
-                    String message = inBR.readLine();
-                    Out.d(TAG, "Message: " + message);
-                    if (message != null) {
-                        Out.d(TAG, new Date().getTime());
-                        Memo memo = Memo.valueOf(message);
-
-                        // On Moose connection, send the active technique
-                        if (memo.getAction().equals(STRINGS.CONNECTION)) {
-
-                            if (memo.getMode().equals(STRINGS.INTRO)) {
-                                send(new Memo(
-                                        STRINGS.CONFIG,
-                                        STRINGS.TECH,
-                                        MainFrame.get().mActiveTechnique));
-                            }
+                if (!addByte(client, b)) return;
+            }
+        }
+
+        /**
+         * Read a binary message (length-prefixed frame), if complete
+         */
+        private void readFrame(Client client) {
+            while (inBuffer.hasRemaining()) {
+                if (!addByte(client, inBuffer.get())) return;
+
+                if (client.lineLen >= 2) {
+                    final int frameLen = ((client.lineBytes[0] & 0xFF) << 8) | (client.lineBytes[1] & 0xFF);
+                    if (client.lineLen == 2 + frameLen) {
+                        client.lineLen = 0;
+                        if (inMemo.tokenizeFrame(client.lineBytes, 2, frameLen)) {
+                            handle(client, inMemo);
+                        } else { // Can't trust the rest of the stream
+                            Out.e(TAG, "Malformed frame from " + client);
+                            disconnect(client);
                         }
+                        return;
+                    }
+                }
+            }
+        }
 
-                        // Dragging...
-                        if (memo.getAction().equals(STRINGS.DRAG)) {
+        /**
+         * Receive the waiting datagrams (touch samples)
+         * Datagram: client id (int, from the UDP Memo), seq (int), Moose time (double, ms), Memo frame (MemoCodec)
+         */
+        private void receiveDatagrams() {
+            try {
+                SocketAddress from;
+                while ((from = udpChannel.receive(udpBuffer.clear())) != null) {
+                    final long receiveTime = ClockSync.nowMicros() / 1000;
+                    udpBuffer.flip();
+                    if (udpBuffer.remaining() < DATAGRAM_HEADER + 2) { // Malformed
+                        strayDatagrams++;
+                        continue;
+                    }
 
-                            switch (memo.getMode()) {
-                                case STRINGS.GRAB -> MainFrame.get().grab();
-                                case STRINGS.RELEASE -> MainFrame.get().release();
-                                case STRINGS.REVERT -> MainFrame.get().revert();
-                            }
-                        }
+                    // Only from the host of the (TCP) client
+                    final Client client = clients.get(udpBuffer.getInt());
+                    if (client == null || !isSameHost(client, from)) {
+                        strayDatagrams++;
+                        continue;
+                    }
+
+                    final long seq = udpBuffer.getInt() & 0xFFFFFFFFL;
+                    final double mooseTime = udpBuffer.getDouble();
+                    final int frameLen = udpBuffer.getShort() & 0xFFFF;
+                    if (frameLen > udpBuffer.remaining()) {
+                        client.countMalformedDatagram();
+                        continue;
+                    }
+
+                    if (!inMemo.tokenizeFrame(udpBuffer.array(), udpBuffer.position(), frameLen)) {
+                        client.countMalformedDatagram();
+                        continue;
+                    }
+                    if (!client.countDatagram(seq)) continue; // Duplicate
+
+                    try {
+                        record(WireRecorder.IN_UDP, client, inMemo);
+                        handleSample(client, inMemo, toPcTime(client, mooseTime, receiveTime), receiveTime);
+                    } catch (RuntimeException e) { // Bad sample => only the datagram is dropped
+                        client.countMalformedDatagram();
+                        Out.e(TAG, "Error in handling a datagram from " + client + ": " + e);
+                    }
+                }
+            } catch (IOException e) {
+                System.out.println("Error in receiving datagrams");
+            }
+        }
+
+        private boolean isSameHost(Client client, SocketAddress from) {
+            return client.getAddress() instanceof InetSocketAddress clientAddress &&
+                    from instanceof InetSocketAddress fromAddress &&
+                    clientAddress.getAddress().equals(fromAddress.getAddress());
+        }
+
+        /**
+         * Add a received byte to the client's line/frame
+         * @return False if too long (the client is disconnected)
+         */
+        private boolean addByte(Client client, byte b) {
+            if (client.lineLen == client.lineBytes.length) {
+                if (client.lineLen >= MAX_LINE_LENGTH) { // No \n => can't trust the rest of the stream
+                    Out.e(TAG, "Line too long from " + client);
+                    client.lineLen = 0;
+                    disconnect(client);
+                    return false;
+                }
+                client.lineBytes = Arrays.copyOf(client.lineBytes, Math.min(client.lineLen * 2, MAX_LINE_LENGTH));
+            }
+            client.lineBytes[client.lineLen++] = b;
+            return true;
+        }
+
+        /**
+         * Check if a client is gone without closing the connection (no PONG/data for a while)
+         * Clients without the handshake may stay silent, so only the TCP keep-alive covers them
+         * @param client Client
+         * @return True if timed out
+         */
+        private boolean isTimedOut(Client client) {
+            return client.syncEnabled && Utils.nowMillis() - client.lastReadTime_ms > CONNECTION_TIMEOUT;
+        }
+
+        /**
+         * Get the time of the next PING or state replay without INTRO (of all the clients)
+         * @return Time (ms), Long.MAX_VALUE if none
+         */
+        private long nextPingTime() {
+            long result = Long.MAX_VALUE;
+            for (Client client : clients.values()) {
+                if (client.syncEnabled) result = Math.min(result, client.nextPingTime_ms);
+                if (!client.stateSent) result = Math.min(result, client.connectTime_ms + INTRO_WAIT_ms);
+            }
+
+            return result;
+        }
+
+        /**
+         * Send a PING to a client, if it's time
+         */
+        private void ping(Client client) {
+            if (!client.syncEnabled || Utils.nowMillis() < client.nextPingTime_ms) return;
+
+            send(client, new Memo(STRINGS.CONNECTION, STRINGS.PING, ClockSync.nowMicros()));
+            client.nPings++;
+            client.nextPingTime_ms = Utils.nowMillis() +
+                    ((client.nPings < N_FAST_PINGS) ? FAST_PING_INTERVAL_ms : PING_INTERVAL_ms);
+        }
+
+        /**
+         * Write the queued messages of a client, batched (continues on OP_WRITE if the socket is full)
+         */
+        private void write(Client client) {
+            if (!client.channel.isOpen()) return;
+
+            try {
+                while (true) {
+                    client.outQueue.fill(client.outBuffer); // All the waiting messages (that fit)
+                    if (client.outBuffer.position() == 0) break; // Nothing to write
+
+                    client.outBuffer.flip();
+                    client.outQueue.written(client.channel.write(client.outBuffer));
+                    client.outBuffer.compact();
 
-                    } else {
-                        Out.d(TAG, "Moose disconnected.");
-                        start();
+                    if (client.outBuffer.position() > 0) { // Socket is full => continue when writable
+                        client.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
                         return;
                     }
-                } catch (IOException e) {
-                    System.out.println("Error in reading from Moose");
-                    start();
                 }
+
+                client.key.interestOps(SelectionKey.OP_READ);
+            } catch (IOException e) {
+                System.out.println("Error in writing to " + client);
+                disconnect(client);
             }
         }
     }
@@ -163,47 +371,481 @@ public class Server {
      */
     public Server() {
         String TAG = NAME;
-
-        // Init executerService for running threads
-//        executor = Executors.newCachedThreadPool();
     }
 
     /**
-     * Start the server
+     * Start the server (listens once; later calls keep the same listener)
      */
-    public void start() {
+    public synchronized void start() {
         String TAG = NAME + "start";
 
-        executor = Executors.newCachedThreadPool();
-        executor.execute(new ConnectionRunnable());
+        if (ioThread != null && ioThread.isAlive()) return;
+
+        try {
+            closing = false;
+            selector = Selector.open();
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(PORT));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+            if (udpEnabled) {
+                udpChannel = DatagramChannel.open();
+                udpChannel.setOption(StandardSocketOptions.SO_RCVBUF, UDP_RECEIVE_BUFFER);
+                udpChannel.bind(new InetSocketAddress(UDP_PORT));
+                udpChannel.configureBlocking(false);
+                udpChannel.register(selector, SelectionKey.OP_READ);
+            }
+
+            ioThread = new Thread(new IoRunnable(), "ServerIO");
+            ioThread.setDaemon(true);
+            ioThread.start();
+        } catch (IOException e) {
+            Out.e(TAG, "Couldn't start the server!");
+            e.printStackTrace();
+            closeChannels();
+        }
     }
 
     /**
-     * Send a Memo to the Moose
+     * Send a Memo to all the clients that take it (see Client.accepts)
      * Called from outside
      * @param mssg Memo message
      */
     public void send(Memo mssg) {
         Out.d(NAME, mssg);
-        if (executor != null) executor.execute(new OutRunnable(mssg));
+        if (mssg == null) return;
+        keepState(mssg);
+
+        boolean queued = false;
+        for (Client client : clients.values()) {
+            if (client.accepts(mssg) && client.outQueue.offer(mssg, Thread.currentThread() != ioThread)) {
+                record(WireRecorder.OUT, client, mssg);
+                queued = true;
+            }
+        }
+        if (queued && selector != null) selector.wakeup();
+    }
+
+    /**
+     * Send a Memo to one client
+     * @param clientId Id of the client
+     * @param mssg Memo message
+     */
+    public void send(int clientId, Memo mssg) {
+        final Client client = clients.get(clientId);
+        if (client != null) send(client, mssg);
+    }
+
+    private void send(Client client, Memo mssg) {
+        Out.d(NAME, client.getId() + " " + mssg);
+        if (mssg == null) return;
+
+        final boolean onIoThread = Thread.currentThread() == ioThread;
+        if (!client.outQueue.offer(mssg, !onIoThread)) return; // Dropped (full)
+
+        record(WireRecorder.OUT, client, mssg);
+        if (selector != null && !onIoThread) selector.wakeup();
     }
 
-    public void close() {
+    /**
+     * Start capturing the traffic (all the clients) into a file (see WireRecorder)
+     * @param file Path of the capture file
+     */
+    public synchronized void startRecording(Path file) {
+        stopRecording();
         try {
-            // Send end message to the Moose
-            send(new Memo(STRINGS.CONNECTION, STRINGS.END, ""));
-
-            // Close the socket, etc.
-            if (serverSocket != null && socket != null) {
-                Out.d(NAME, "Closing the socket...");
-                serverSocket.close();
-                socket.close();
+            recorder = new WireRecorder(file);
+            Out.d(NAME, "Recording to " + file);
+        } catch (IOException e) {
+            Out.e(NAME, "Couldn't create the capture file!");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Stop capturing (writes the remaining records)
+     */
+    public synchronized void stopRecording() {
+        final WireRecorder rec = recorder;
+        recorder = null;
+        if (rec != null) rec.close();
+    }
+
+    private void record(byte direction, Client client, Memo memo) {
+        final WireRecorder rec = recorder;
+        if (rec != null) rec.record(direction, client.getId(), memo);
+    }
+
+    private void record(byte direction, Client client, MemoTokenizer memo) {
+        final WireRecorder rec = recorder;
+        if (rec != null) rec.record(direction, client.getId(), memo.toMemo());
+    }
+
+    /**
+     * Keep a Memo if it's part of the state (CONFIG or EXP_ID)
+     * @param memo Memo
+     */
+    private void keepState(Memo memo) {
+        final boolean isState = memo.getAction().equals(STRINGS.CONFIG) ||
+                (memo.getAction().equals(STRINGS.LOG) && memo.getMode().equals(STRINGS.EXP_ID));
+        if (!isState) return;
+
+        synchronized (state) {
+            state.put(memo.getAction() + memo.getMode(), memo);
+        }
+    }
+
+    /**
+     * Bring a client to the current state (also after a drop), once, with the Memos of its role
+     * @param client Client
+     */
+    private void sendState(Client client) {
+        if (client.stateSent) return;
+        client.stateSent = true;
+
+        for (Memo memo : getState()) {
+            if (client.accepts(memo)) send(client, memo);
+        }
+    }
+
+    /**
+     * Get the current state (from the listener, then the last CONFIG Memos)
+     * @return List of Memos (to send in order)
+     */
+    private List<Memo> getState() {
+        final Map<String, Memo> result = new LinkedHashMap<>();
+
+        // The active technique/pId and the exp_id
+        if (listener != null) {
+            for (Memo memo : listener.getStateMemos()) result.put(memo.getAction() + memo.getMode(), memo);
+        }
+
+        // Other CONFIGs sent so far (the listener's ones are the current ones)
+        synchronized (state) {
+            state.forEach(result::putIfAbsent);
+        }
+
+        return List.copyOf(result.values());
+    }
+
+    /**
+     * Enable the UDP channel for the touch samples (call before start)
+     * @param enabled Enabled?
+     */
+    public void setUdpEnabled(boolean enabled) {
+        udpEnabled = enabled;
+    }
+
+    /**
+     * Set what happens when a client's send queue is full (the client stalls)
+     * @param policy BLOCK (the sender waits a bit) or DROP_OLDEST
+     */
+    public void setOutQueuePolicy(OutboundQueue.FULL_POLICY policy) {
+        outQueuePolicy = policy;
+        for (Client client : clients.values()) client.outQueue.setFullPolicy(policy);
+    }
+
+    /**
+     * Set the receiver of the Moose actions
+     * @param listener MooseListener
+     */
+    public void setListener(MooseListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Get the connected clients
+     * @return List of clients (snapshot, by id)
+     */
+    public List<Client> getClients() {
+        return List.copyOf(clients.values());
+    }
+
+    /**
+     * Get the number of datagrams that weren't from a client (or too short to tell)
+     * @return Number of datagrams
+     */
+    public long getStrayDatagramCount() {
+        return strayDatagrams;
+    }
+
+    /**
+     * Check if any observer is connected
+     * @return True if there is at least one
+     */
+    public boolean hasObservers() {
+        for (Client client : clients.values()) {
+            if (client.getRole() == Client.ROLE.OBSERVER) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Get the primary Moose (the first connected one)
+     * @return Client or null if no Moose is connected
+     */
+    private Client getMoose() {
+        for (Client client : clients.values()) {
+            if (client.getRole() == Client.ROLE.MOOSE) return client;
+        }
+        return null;
+    }
+
+    /**
+     * Get the round-trip time to Moose (smoothed)
+     * @return RTT (ms), -1 if unknown
+     */
+    public double getRtt_ms() {
+        final Client moose = getMoose();
+        return (moose == null) ? -1 : moose.clockSync.getRtt_ms();
+    }
+
+    /**
+     * Get the offset of the Moose clock to the PC clock (smoothed)
+     * @return Moose time - PC time (ms)
+     */
+    public double getClockOffset_ms() {
+        final Client moose = getMoose();
+        return (moose == null) ? 0 : moose.clockSync.getOffset_ms();
+    }
+
+    /**
+     * Get the number of Memos not yet sent (all the clients)
+     * @return Queue depth
+     */
+    public int getOutQueueDepth() {
+        int depth = 0;
+        for (Client client : clients.values()) depth += client.outQueue.getDepth();
+        return depth;
+    }
+
+    /**
+     * Get the mean time from send() until the Memo is written to the socket (all the clients)
+     * @return Latency (microseconds)
+     */
+    public double getMeanSendLatency_us() {
+        long count = 0;
+        double total = 0;
+        for (Client client : clients.values()) {
+            final long n = client.outQueue.getSentCount();
+            count += n;
+            total += client.outQueue.getMeanLatency_us() * n;
+        }
+        return (count == 0) ? 0 : total / count;
+    }
+
+    /**
+     * Get the max time from send() until the Memo is written to the socket (all the clients)
+     * @return Latency (microseconds)
+     */
+    public double getMaxSendLatency_us() {
+        double max = 0;
+        for (Client client : clients.values()) max = Math.max(max, client.outQueue.getMaxLatency_us());
+        return max;
+    }
+
+    /**
+     * Get the number of Memos dropped because a send queue was full (connected clients)
+     * @return Dropped count
+     */
+    public long getOutDroppedCount() {
+        long count = 0;
+        for (Client client : clients.values()) count += client.outQueue.getDroppedCount();
+        return count;
+    }
+
+    /**
+     * Get the number of times a sender waited for a full send queue (connected clients)
+     * @return Blocked count
+     */
+    public long getOutBlockedCount() {
+        long count = 0;
+        for (Client client : clients.values()) count += client.outQueue.getBlockedCount();
+        return count;
+    }
+
+    public synchronized void close() {
+        // Send end message to the clients
+        send(new Memo(STRINGS.CONNECTION, STRINGS.END, ""));
+
+        // Stop the I/O thread (it sends the remaining messages and closes the sockets, etc.)
+        Out.d(NAME, "Closing the socket...");
+        closing = true;
+        if (selector != null) selector.wakeup();
+        if (ioThread != null) {
+            try {
+                ioThread.join(CLOSE_TIMEOUT);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
-            Out.d(NAME, "Shutting down the executer...");
-            if (executor != null) executor.shutdownNow();
+            ioThread = null;
+        }
+
+        stopRecording();
+    }
+
+    /**
+     * Close the connection to a client (the server keeps listening)
+     * @param client Client
+     */
+    private void disconnect(Client client) {
+        clients.remove(client.getId());
+
+        try {
+            client.channel.close(); // Also cancels its key
+        } catch (IOException e) {
+            Out.e(NAME, "Couldn't close the socket!");
+        }
+        client.outQueue.clear();
+        if (client.outQueue.getDroppedCount() > 0) {
+            Out.d(NAME, client + " dropped " + client.outQueue.getDroppedCount() + " Memos (send queue full)");
+        }
+    }
+
+    /**
+     * Close the client and server channels and the selector
+     */
+    private void closeChannels() {
+        for (Client client : clients.values()) disconnect(client);
+
+        try {
+            if (serverChannel != null) serverChannel.close();
+            if (udpChannel != null) udpChannel.close();
+            if (selector != null) selector.close();
         } catch (IOException e) {
             Out.e(NAME, "Couldn't close the socket!");
             e.printStackTrace();
         }
     }
+
+    /**
+     * Handle a message from a client
+     * @param client Sender
+     * @param memo Received Memo (valid until the next one)
+     */
+    private void handle(Client client, MemoTokenizer memo) {
+        record(WireRecorder.IN, client, memo);
+
+        switch (memo.getAction()) {
+            case CONNECTION -> {
+                switch (memo.getMode()) {
+                    // On connection, send the state for the role (value1: role, Moose if not set)
+                    case INTRO -> {
+                        client.introduce(memo);
+                        Out.d(NAME, "Introduced: " + client);
+                        sendState(client);
+                    }
+
+                    case PROTOCOL -> negotiate(client, memo);
+
+                    // PONG: value1 = echoed PING time, value2 = client time (ms)
+                    case PONG -> {
+                        try {
+                            client.clockSync.addSample(memo.getLongValue(1), memo.getDblValue(2), client.readTime_us);
+                        } catch (NumberFormatException e) {
+                            Out.e(NAME, "Bad PONG");
+                        }
+                    }
+                }
+            }
+
+            // Dragging... (value1: Moose time of the event, ms) (only from Moose clients)
+            case DRAG -> {
+                final MooseListener listener = this.listener;
+                if (client.getRole() != Client.ROLE.MOOSE || listener == null) return;
+
+                final long receiveTime = client.readTime_us / 1000;
+                switch (memo.getMode()) {
+                    case GRAB -> listener.grab(client.getId(), eventTime(client, memo, receiveTime), receiveTime);
+                    case RELEASE -> listener.release(client.getId(), eventTime(client, memo, receiveTime), receiveTime);
+                    case REVERT -> listener.revert(client.getId(), eventTime(client, memo, receiveTime), receiveTime);
+                    case MOVE -> handleSample(client, memo, receiveTime, receiveTime); // No Moose time on TCP
+                }
+            }
+        }
+    }
+
+    /**
+     * Handle a touch sample (over UDP or TCP)
+     * Only the samples come over UDP; the control Memos there are ignored
+     * @param client Sender
+     * @param memo DRAG&MOVE&dX&dY
+     * @param eventTime When it happened on Moose (PC clock, ms)
+     * @param receiveTime PC time when it was received (ms)
+     */
+    private void handleSample(Client client, MemoTokenizer memo, long eventTime, long receiveTime) {
+        final MooseListener listener = this.listener;
+        if (listener == null || client.getRole() != Client.ROLE.MOOSE) return;
+        if (memo.getAction() != MemoTokenizer.ACTION.DRAG || memo.getMode() != MemoTokenizer.MODE.MOVE) return;
+
+        try {
+            listener.move(client.getId(), memo.getDblValue(1), memo.getDblValue(2), eventTime, receiveTime);
+        } catch (NumberFormatException e) {
+            Out.e(NAME, "Bad MOVE");
+        }
+    }
+
+    /**
+     * Get the time of a Moose event on the PC clock
+     * The receive time is used if Moose didn't send the event time, or the clocks aren't synced yet
+     * @param client Sender
+     * @param memo Received Memo (value1: Moose time, ms)
+     * @param receiveTime PC time when the Memo was received (ms)
+     * @return PC time (ms)
+     */
+    private long eventTime(Client client, MemoTokenizer memo, long receiveTime) {
+        if (!memo.hasValue(1)) return receiveTime;
+
+        try {
+            return toPcTime(client, memo.getDblValue(1), receiveTime);
+        } catch (NumberFormatException e) {
+            return receiveTime;
+        }
+    }
+
+    /**
+     * Translate a Moose time to the PC clock (with the client's clock offset)
+     * @param client Sender
+     * @param mooseTime Moose time (ms)
+     * @param receiveTime PC time when it was received (ms) (used if the clocks aren't synced yet)
+     * @return PC time (ms)
+     */
+    private long toPcTime(Client client, double mooseTime, long receiveTime) {
+        if (client.clockSync.getSampleCount() == 0) return receiveTime;
+
+        // Can't be after receiving (offset error)
+        return Math.min(Math.round(client.clockSync.toPcTime_ms(mooseTime)), receiveTime);
+    }
+
+    /**
+     * Agree on the form of the Memos with a client (it sends its highest version and waits for the reply)
+     * The reply is in text; both sides use the agreed form after it (0 => text)
+     * @param client Sender
+     * @param memo PROTOCOL Memo (value1: client's version)
+     */
+    private void negotiate(Client client, MemoTokenizer memo) {
+        int version;
+        try {
+            version = (int) Math.min(memo.getLongValue(1), MemoCodec.VERSION);
+        } catch (NumberFormatException e) {
+            version = 0;
+        }
+
+        Out.d(NAME, client.getId() + " protocol version: " + version);
+        final Memo reply = new Memo(STRINGS.CONNECTION, STRINGS.PROTOCOL, version);
+        client.outQueue.offerSwitch(reply, version > 0);
+        record(WireRecorder.OUT, client, reply);
+        client.binaryIn = version > 0;
+
+        // Where to send the touch samples (binary clients only)
+        if (version > 0 && udpChannel != null) {
+            send(client, new Memo(STRINGS.CONNECTION, STRINGS.UDP, UDP_PORT, client.getId()));
+        }
+
+        // Builds with the handshake also answer PINGs
+        client.syncEnabled = true;
+        client.nPings = 0;
+        client.nextPingTime_ms = Utils.nowMillis();
+    }
 }
@@ -0,0 +1,201 @@
+package control;
+
+import tools.Memo;
+import tools.Out;
+import tools.Utils;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static tools.Consts.*;
+
+/**
+ * Live summary of the session for the observer clients (instead of watching the console)
+ * The panels only count (a few field writes per event, on the EDT); a timer sums up and sends one Memo per interval:
+ * TELEMETRY&SUMMARY&block,trial,hits,misses,rolling trial time (ms)&input p50,p95,p99,render p50,p95,p99 (us)
+ * Input: Moose event > handled on the EDT. Render: handled on the EDT > the next paint of the panel.
+ * The latencies are of the last interval (-1 if none). Input is in us but only of 1 ms resolution (the event times are ms)
+ * The panels' hooks are no-ops until start()
+ */
+public class Telemetry {
+    private final static String NAME = "Telemetry/";
+
+    private static Telemetry self; // Singleton
+
+    private final long INTERVAL_ms = 1000;
+    private final int ROLLING_TRIALS = 10; // For the rolling trial time
+
+    private final ScheduledExecutorService mExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        final Thread thread = new Thread(r, "Telemetry");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private ScheduledFuture<?> mTask;
+    private volatile boolean mStarted;
+
+    // Written only by the EDT
+    private volatile int mBlockNum, mTrialNum;
+    private volatile int mHitCount, mMissCount;
+    private volatile double mRollingTrialTime_ms;
+    private final int[] mTrialTimes = new int[ROLLING_TRIALS];
+    private int mNumTrials;
+    private long mPendingInput_ns; // Handled input not yet painted (0 => none)
+
+    private final Histogram mInputLatencies = new Histogram();
+    private final Histogram mRenderLatencies = new Histogram();
+
+    //-- Counts of latencies in log buckets (4 per power of two => about 20% precision), any thread
+    private static class Histogram {
+        private static final int SUB_BUCKETS = 4;
+        private static final int N_BUCKETS = 32 * SUB_BUCKETS;
+
+        private final AtomicLongArray mCounts = new AtomicLongArray(N_BUCKETS);
+
+        void add(long value_us) {
+            mCounts.incrementAndGet(index(Math.max(1, value_us)));
+        }
+
+        private static int index(long value) {
+            final int exp = 63 - Long.numberOfLeadingZeros(value);
+            final int sub = (exp < 2) ? 0 : (int) ((value >> (exp - 2)) & (SUB_BUCKETS - 1));
+            return Math.min(N_BUCKETS - 1, exp * SUB_BUCKETS + sub);
+        }
+
+        private static long lowerBound(int index) {
+            final int exp = index / SUB_BUCKETS;
+            final int sub = index % SUB_BUCKETS;
+            return (exp < 2) ? (1L << exp) : (1L << exp) + ((long) sub << (exp - 2));
+        }
+
+        /**
+         * Take the counts (and start over)
+         * @return Counts by bucket
+         */
+        long[] drain() {
+            final long[] counts = new long[N_BUCKETS];
+            for (int bi = 0; bi < N_BUCKETS; bi++) counts[bi] = mCounts.getAndSet(bi, 0);
+            return counts;
+        }
+
+        /**
+         * Get the percentiles of drained counts
+         * @param counts From drain()
+         * @param ps Percentiles (0-100, ascending)
+         * @return Values (us, the middle of the bucket), -1 if no samples
+         */
+        static long[] percentiles(long[] counts, double... ps) {
+            long total = 0;
+            for (long count : counts) total += count;
+
+            final long[] result = new long[ps.length];
+            int pi = 0;
+            long seen = 0;
+            for (int bi = 0; bi < counts.length && pi < ps.length; bi++) {
+                seen += counts[bi];
+                while (pi < ps.length && total > 0 && seen >= Math.ceil(ps[pi] / 100 * total)) {
+                    result[pi++] = (lowerBound(bi) + lowerBound(bi + 1)) / 2;
+                }
+            }
+            while (pi < ps.length) result[pi++] = -1;
+
+            return result;
+        }
+    }
+
+    // -------------------------------------------------------------------------------------------
+
+    /**
+     * Get the instance
+     * @return Telemetry instance
+     */
+    public static synchronized Telemetry get() {
+        if (self == null) self = new Telemetry();
+        return self;
+    }
+
+    /**
+     * Start sending the summaries (every INTERVAL)
+     */
+    public synchronized void start() {
+        if (mTask != null) return;
+        mStarted = true;
+        mTask = mExecutor.scheduleAtFixedRate(this::sendSummary, INTERVAL_ms, INTERVAL_ms, TimeUnit.MILLISECONDS);
+        Out.d(NAME, "Sending summaries every " + INTERVAL_ms + " ms");
+    }
+
+    public synchronized void stop() {
+        mStarted = false;
+        if (mTask != null) mTask.cancel(false);
+        mTask = null;
+    }
+
+    /**
+     * A trial is shown (on the EDT)
+     * @param blockNum Block number
+     * @param trialNum Trial number
+     */
+    public void trialShown(int blockNum, int trialNum) {
+        if (!mStarted) return;
+        mBlockNum = blockNum;
+        mTrialNum = trialNum;
+    }
+
+    /**
+     * A trial ended (on the EDT)
+     * @param hit Hit or miss?
+     * @param trialTime_ms Trial time (ms)
+     */
+    public void trialEnded(boolean hit, int trialTime_ms) {
+        if (!mStarted) return;
+        if (hit) mHitCount++;
+        else mMissCount++;
+
+        mTrialTimes[mNumTrials % ROLLING_TRIALS] = trialTime_ms;
+        mNumTrials++;
+
+        final int n = Math.min(mNumTrials, ROLLING_TRIALS);
+        long sum = 0;
+        for (int ti = 0; ti < n; ti++) sum += mTrialTimes[ti];
+        mRollingTrialTime_ms = (double) sum / n;
+    }
+
+    /**
+     * A Moose event is handled (on the EDT)
+     * @param eventTime When it happened on Moose (PC clock, ms)
+     */
+    public void inputHandled(long eventTime) {
+        if (!mStarted) return;
+        mInputLatencies.add((Utils.nowMillis() - eventTime) * 1000);
+        if (mPendingInput_ns == 0) mPendingInput_ns = System.nanoTime();
+    }
+
+    /**
+     * The task panel is painted (on the EDT)
+     */
+    public void rendered() {
+        if (!mStarted || mPendingInput_ns == 0) return;
+        mRenderLatencies.add((System.nanoTime() - mPendingInput_ns) / 1000);
+        mPendingInput_ns = 0;
+    }
+
+    /**
+     * Sum up the interval and send it to the observers (on the timer thread)
+     */
+    private void sendSummary() {
+        final boolean watched = Server.get().hasObservers();
+        final long[] input = Histogram.percentiles(mInputLatencies.drain(), 50, 95, 99);
+        final long[] render = Histogram.percentiles(mRenderLatencies.drain(), 50, 95, 99);
+
+        if (!watched) return; // The counts go on
+
+        final String counts = mBlockNum + "," + mTrialNum + "," + mHitCount + "," + mMissCount + ","
+                + Math.round(mRollingTrialTime_ms);
+        final String latencies = input[0] + "," + input[1] + "," + input[2] + ","
+                + render[0] + "," + render[1] + "," + render[2];
+
+        Server.get().send(new Memo(STRINGS.TELEMETRY, STRINGS.SUMMARY, counts, latencies));
+    }
+}
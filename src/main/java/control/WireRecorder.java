@@ -0,0 +1,180 @@
+package control;
+
+import tools.Memo;
+import tools.MemoCodec;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Captures the Memos the Server receives and sends (for replaying with WireReplayer)
+ * File: MAGIC (int), VERSION (short), start time (epoch ms, long), then the records:
+ * direction (byte), time since the start (ns, long), client id (int), Memo frame (MemoCodec, with the length)
+ * The file is written by a background thread (the callers only encode)
+ */
+public class WireRecorder {
+    private final static String NAME = "WireRecorder/";
+
+    public static final String EXTENSION = ".wire";
+    public static final int MAGIC = 0x45585752; // EXWR
+    public static final short VERSION = 1;
+
+    public static final byte IN = 0; // Received (TCP)
+    public static final byte OUT = 1; // Sent
+    public static final byte IN_UDP = 2; // Received (UDP)
+
+    private final int BUFFER_SIZE = 64 * 1024; // Bytes
+    private final long CLOSE_TIMEOUT_ms = 2000;
+
+    private final long mStartTime_ns = System.nanoTime();
+    private final DataOutputStream mOut;
+    private final ExecutorService mExecutor;
+    private volatile long mRecordCount;
+
+    //-- A record (read from a capture file)
+    public static class Record {
+        public final byte direction;
+        public final long time_ns; // Since the start
+        public final int clientId;
+        public final Memo memo;
+
+        Record(byte direction, long time_ns, int clientId, Memo memo) {
+            this.direction = direction;
+            this.time_ns = time_ns;
+            this.clientId = clientId;
+            this.memo = memo;
+        }
+
+        @Override
+        public String toString() {
+            final String dir = switch (direction) {
+                case IN -> "IN ";
+                case OUT -> "OUT";
+                default -> "UDP";
+            };
+            return String.format("%12.3f ms %s %d %s", time_ns / 1e6, dir, clientId, memo);
+        }
+    }
+
+    // -------------------------------------------------------------------------------------------
+
+    /**
+     * Create the capture file
+     * @param file Path of the file
+     * @throws IOException If can't create
+     */
+    public WireRecorder(Path file) throws IOException {
+        mOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE));
+        mOut.writeInt(MAGIC);
+        mOut.writeShort(VERSION);
+        mOut.writeLong(System.currentTimeMillis());
+
+        mExecutor = Executors.newSingleThreadExecutor(r -> {
+            final Thread thread = new Thread(r, "WireRecorder");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Record a Memo (any thread)
+     * @param direction IN, OUT or IN_UDP
+     * @param clientId Id of the client
+     * @param memo Memo
+     */
+    public void record(byte direction, int clientId, Memo memo) {
+        final long time = System.nanoTime() - mStartTime_ns;
+        final byte[] frame;
+        try {
+            frame = MemoCodec.encode(memo);
+        } catch (IllegalArgumentException e) { // Too long
+            return;
+        }
+
+        try {
+            mExecutor.execute(() -> write(direction, time, clientId, frame));
+        } catch (RejectedExecutionException e) {
+            // Closed
+        }
+    }
+
+    private void write(byte direction, long time, int clientId, byte[] frame) {
+        try {
+            mOut.writeByte(direction);
+            mOut.writeLong(time);
+            mOut.writeInt(clientId);
+            mOut.write(frame);
+            mRecordCount++;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public long getRecordCount() {
+        return mRecordCount;
+    }
+
+    /**
+     * Write the remaining records and close the file
+     */
+    public void close() {
+        try {
+            mExecutor.execute(() -> {
+                try {
+                    mOut.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            return; // Already closed
+        }
+        mExecutor.shutdown();
+
+        try {
+            mExecutor.awaitTermination(CLOSE_TIMEOUT_ms, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Read a capture file
+     * @param file Path of the file
+     * @return List of the records (in order)
+     * @throws IOException If can't read or not a capture file
+     */
+    public static List<Record> read(Path file) throws IOException {
+        final List<Record> result = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) throw new IOException(NAME + "Not a capture file: " + file);
+            final short version = in.readShort();
+            if (version > VERSION) throw new IOException(NAME + "Unknown version: " + version);
+            in.readLong(); // Start time
+
+            while (true) {
+                final int direction = in.read();
+                if (direction < 0) break; // End of the file
+
+                final long time = in.readLong();
+                final int clientId = in.readInt();
+                final byte[] frame = new byte[in.readUnsignedShort()];
+                in.readFully(frame);
+
+                result.add(new Record((byte) direction, time, clientId, MemoCodec.decode(ByteBuffer.wrap(frame))));
+            }
+        } catch (EOFException e) {
+            // Cut at the end (not closed properly) => keep what was read
+        }
+
+        return result;
+    }
+}
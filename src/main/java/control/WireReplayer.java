@@ -0,0 +1,197 @@
+package control;
+
+import tools.Memo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.locks.LockSupport;
+
+import static tools.Consts.*;
+
+/**
+ * Replays a capture of WireRecorder: re-sends the received Memos to a Server, one connection per recorded client
+ * At the original pacing (by the recorded times) or as fast as possible (-fast)
+ * The PROTOCOL/PONG Memos are skipped (text Memos, no clock sync)
+ * The replay is approximate for the UDP samples and across clients: the samples are sent over TCP (in order, none lost)
+ * and each client has its own socket, so the interleaving of the clients' Memos on the Server is not deterministic
+ * With -local, starts the Server in this process and reports when all the actions are dispatched on the EDT
+ * With -dump, only prints the records
+ * Usage: WireReplayer <capture file> [-fast] [-host H] [-port P] [-local] [-dump]
+ */
+public class WireReplayer implements MooseListener {
+    private final static String NAME = "WireReplayer/";
+
+    private final static long DONE_TIMEOUT_ms = 10_000;
+
+    // Options
+    private Path file;
+    private boolean fast;
+    private String host = "localhost";
+    private int port = 8000;
+    private boolean local;
+    private boolean dump;
+
+    //----------------------------------------------------------------------------------------
+
+    /**
+     * Run the replay
+     * @param args Options (see the class doc)
+     */
+    public static void main(String[] args) throws Exception {
+        final WireReplayer replayer = new WireReplayer();
+        replayer.parse(args);
+        final boolean passed = replayer.run();
+
+        if (replayer.local) Server.get().close();
+        System.exit(passed ? 0 : 1);
+    }
+
+    private void parse(String[] args) {
+        for (int ai = 0; ai < args.length; ai++) {
+            switch (args[ai]) {
+                case "-fast" -> fast = true;
+                case "-host" -> host = args[++ai];
+                case "-port" -> port = Integer.parseInt(args[++ai]);
+                case "-local" -> local = true;
+                case "-dump" -> dump = true;
+                default -> {
+                    if (args[ai].startsWith("-")) throw new IllegalArgumentException("Unknown option: " + args[ai]);
+                    file = Paths.get(args[ai]);
+                }
+            }
+        }
+
+        if (file == null) throw new IllegalArgumentException("No capture file");
+    }
+
+    /**
+     * Read the capture and re-send the received Memos
+     * @return True if all sent (and dispatched, if local)
+     */
+    private boolean run() throws Exception {
+        final List<WireRecorder.Record> records = WireRecorder.read(file);
+        if (dump) { // Only print
+            for (WireRecorder.Record record : records) System.out.println(record);
+            return true;
+        }
+
+        // Only the received ones (the Server's handshake is not replayed)
+        final List<WireRecorder.Record> inRecords = new ArrayList<>();
+        int nActions = 0;
+        for (WireRecorder.Record record : records) {
+            if (record.direction == WireRecorder.OUT) continue;
+            final String mode = record.memo.getMode();
+            if (mode.equals(STRINGS.PROTOCOL) || mode.equals(STRINGS.PONG)) continue;
+
+            inRecords.add(record);
+            if (record.memo.getAction().equals(STRINGS.DRAG)) nActions++;
+        }
+        System.out.printf("%s %s: %d records, %d to replay (%d actions)%n",
+                NAME, file.getFileName(), records.size(), inRecords.size(), nActions);
+        if (inRecords.isEmpty()) return true;
+
+        GestureQueue gestureQueue = null;
+        if (local) {
+            gestureQueue = new GestureQueue(this);
+            Server.get().setListener(gestureQueue);
+            Server.get().start();
+        }
+
+        // A connection per recorded client (in the order they appear)
+        final Map<Integer, SocketChannel> channels = new LinkedHashMap<>();
+        for (WireRecorder.Record record : inRecords) {
+            if (!channels.containsKey(record.clientId)) channels.put(record.clientId, connect());
+        }
+
+        // Send by the recorded times (from the first one)
+        final long firstTime = inRecords.get(0).time_ns;
+        final long start = System.nanoTime();
+        long maxLate_ns = 0;
+        for (WireRecorder.Record record : inRecords) {
+            if (!fast) {
+                final long due = start + (record.time_ns - firstTime);
+                long wait;
+                while ((wait = due - System.nanoTime()) > 0) LockSupport.parkNanos(wait);
+                maxLate_ns = Math.max(maxLate_ns, System.nanoTime() - due);
+            }
+
+            send(channels.get(record.clientId), record.memo);
+        }
+        final double sendDuration_s = (System.nanoTime() - start) / 1e9;
+        final double recordedDuration_s = (inRecords.get(inRecords.size() - 1).time_ns - firstTime) / 1e9;
+
+        System.out.printf("Sent %d Memos in %.3f s (recorded %.3f s), %.0f Memos/s%s%n",
+                inRecords.size(), sendDuration_s, recordedDuration_s, inRecords.size() / sendDuration_s,
+                fast ? "" : String.format(", max late %.1f us", maxLate_ns / 1000.0));
+
+        boolean passed = true;
+        if (local) {
+            final long deadline = System.currentTimeMillis() + DONE_TIMEOUT_ms;
+            while (gestureQueue.getDispatchCount() < nActions && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            final double dispatchDuration_s = (System.nanoTime() - start) / 1e9;
+
+            passed = gestureQueue.getDispatchCount() == nActions;
+            System.out.printf("Dispatched %d/%d actions in %.3f s (%.0f/s), queue mean %.1f us, max %.1f us%n",
+                    gestureQueue.getDispatchCount(), nActions, dispatchDuration_s,
+                    gestureQueue.getDispatchCount() / dispatchDuration_s,
+                    gestureQueue.getMeanDelay_us(), gestureQueue.getMaxDelay_us());
+            if (!passed) System.out.println("FAILED (not all dispatched)");
+        }
+
+        for (SocketChannel channel : channels.values()) channel.close();
+
+        return passed;
+    }
+
+    /**
+     * Connect a client (text Memos) and discard what the Server sends
+     * @return Channel
+     */
+    private SocketChannel connect() throws IOException {
+        final SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port));
+        channel.socket().setTcpNoDelay(true);
+
+        final Thread reader = new Thread(() -> {
+            try (InputStream in = channel.socket().getInputStream()) {
+                final byte[] buffer = new byte[8 * 1024];
+                while (in.read(buffer) >= 0) {
+                    // Not needed
+                }
+            } catch (IOException e) {
+                // Closed
+            }
+        }, "WireReplayer-Reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        return channel;
+    }
+
+    private void send(SocketChannel channel, Memo memo) throws IOException {
+        final ByteBuffer bb = ByteBuffer.wrap((memo + "\n").getBytes(StandardCharsets.UTF_8));
+        while (bb.hasRemaining()) channel.write(bb);
+    }
+
+    @Override
+    public List<Memo> getStateMemos() {
+        return List.of();
+    }
+
+    @Override
+    public void grab(int clientId, long eventTime, long receiveTime) {}
+
+    @Override
+    public void release(int clientId, long eventTime, long receiveTime) {}
+
+    @Override
+    public void revert(int clientId, long eventTime, long receiveTime) {}
+}
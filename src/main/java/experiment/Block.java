@@ -1,6 +1,7 @@
 package experiment;
 
 import com.google.gson.Gson;
+import log.GenLogJson;
 import tools.Out;
 import tools.Utils;
 
@@ -13,6 +14,10 @@ public class Block {
 
     public final ArrayList<Trial> mTrials = new ArrayList<>();
 
+    // For the GENLOG payloads (set in prepareGenLogs)
+    private transient Experiment.TASK mTask;
+    private transient Experiment.TECHNIQUE mTechnique;
+
     public Block() {
 
     }
@@ -92,6 +97,7 @@ public class Block {
     public void setTrialLocation(int trNum, Point loc) {
         mTrials.get(trNum - 1).setBoundRectLocation(loc);
         mTrials.get(trNum - 1).positionElements();
+        mTrials.get(trNum - 1).genLogJson = null; // Trial changed
     }
 
     public void positionAllTrialsElements() {
@@ -101,6 +107,45 @@ public class Block {
         }
     }
 
+    /**
+     * Serialize the GENLOG payloads of all the trials (after positionAllTrialsElements)
+     * @param task Task
+     * @param technique Technique
+     */
+    public void prepareGenLogs(Experiment.TASK task, Experiment.TECHNIQUE technique) {
+        mTask = task;
+        mTechnique = technique;
+        for (Trial tr : mTrials) {
+            tr.genLogJson = new GenLogJson(task, technique, tr.toString());
+        }
+    }
+
+    /**
+     * Get the GENLOG payload of a trial (serialized now if it changed since prepareGenLogs)
+     * @param blkNum Block number
+     * @param trNum Trial number (starting from 1)
+     * @return JSON String
+     */
+    public String getGenLogJson(int blkNum, int trNum) {
+        return getPreparedGenLog(trNum).toJson(blkNum, trNum);
+    }
+
+    /**
+     * Get a trial as logged (made in prepareGenLogs, not at the trial onset)
+     * @param trNum Trial number (starting from 1)
+     * @return Trial String
+     */
+    public String getTrialStr(int trNum) {
+        return getPreparedGenLog(trNum).getTrialStr();
+    }
+
+    private GenLogJson getPreparedGenLog(int trNum) {
+        final Trial trial = mTrials.get(trNum - 1);
+        if (trial.genLogJson == null) trial.genLogJson = new GenLogJson(mTask, mTechnique, trial.toString());
+
+        return trial.genLogJson;
+    }
+
     /**
      * Shuffle a duplicate of a Trial to the rest
      * @param trNum Trial number (from 1)
@@ -2,6 +2,7 @@ package experiment;
 
 import com.google.gson.Gson;
 import graphic.MoRectangle;
+import log.GenLogJson;
 
 import java.awt.*;
 import java.util.ArrayList;
@@ -14,6 +15,9 @@ public class Trial {
     protected List<Integer> config = new ArrayList<>();
     protected MoRectangle boundRect = new MoRectangle();
 
+    // Cached GENLOG payload (set by the Block when laid out; not in the clones)
+    protected transient GenLogJson genLogJson;
+
     public Trial(List<Integer> conf, int... params) {
         config.addAll(conf);
         // params in managed in subclasses
@@ -0,0 +1,100 @@
+package log;
+
+import experiment.Experiment;
+
+import java.util.Arrays;
+
+/**
+ * Actions of one trial kept in primitive arrays (grows if needed)
+ * All the actions share the same GeneralLog values (context)
+ */
+public class ActionBuffer {
+    private final static String NAME = "ActionBuffer/";
+
+    private static final int INIT_CAPACITY = 4096;
+
+    private static final Experiment.ACTION[] ACTIONS = Experiment.ACTION.values();
+
+    // Context
+    public Experiment.TASK task;
+    public Experiment.TECHNIQUE technique;
+    public int block_num;
+    public int trial_num;
+    public String trialStr;
+
+    // Actions
+    private byte[] mTypes = new byte[INIT_CAPACITY];
+    private int[] mXs = new int[INIT_CAPACITY];
+    private int[] mYs = new int[INIT_CAPACITY];
+    private long[] mMoments = new long[INIT_CAPACITY];
+    private int mSize;
+
+    // -------------------------------------------------------------------------------------------
+
+    /**
+     * Set the context from a GeneralLog
+     * @param genLog GeneralLog
+     */
+    public void setContext(GeneralLog genLog) {
+        task = genLog.task;
+        technique = genLog.technique;
+        block_num = genLog.block_num;
+        trial_num = genLog.trial_num;
+        trialStr = genLog.trialStr;
+    }
+
+    /**
+     * Check if a GeneralLog has the same values as the context
+     * @param genLog GeneralLog
+     * @return True if the same
+     */
+    public boolean isContext(GeneralLog genLog) {
+        return genLog.task == task
+                && genLog.technique == technique
+                && genLog.block_num == block_num
+                && genLog.trial_num == trial_num
+                && (genLog.trialStr == null ? trialStr == null : genLog.trialStr.equals(trialStr));
+    }
+
+    /**
+     * Add an action
+     * @param actionLog ActionLog
+     */
+    public void add(ActionLog actionLog) {
+        if (mSize == mTypes.length) grow();
+
+        mTypes[mSize] = (byte) actionLog.type.ordinal();
+        mXs[mSize] = actionLog.x;
+        mYs[mSize] = actionLog.y;
+        mMoments[mSize] = actionLog.moment;
+        mSize++;
+    }
+
+    /**
+     * Copy an action into an ActionLog
+     * @param ind Index of the action
+     * @param actionLog ActionLog to fill
+     */
+    public void get(int ind, ActionLog actionLog) {
+        actionLog.type = ACTIONS[mTypes[ind]];
+        actionLog.x = mXs[ind];
+        actionLog.y = mYs[ind];
+        actionLog.moment = mMoments[ind];
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public void clear() {
+        mSize = 0;
+    }
+
+    private void grow() {
+        final int capacity = mTypes.length * 2;
+        mTypes = Arrays.copyOf(mTypes, capacity);
+        mXs = Arrays.copyOf(mXs, capacity);
+        mYs = Arrays.copyOf(mYs, capacity);
+        mMoments = Arrays.copyOf(mMoments, capacity);
+    }
+}
@@ -4,9 +4,6 @@ import experiment.Experiment;
 import tools.Utils;
 
 import java.awt.*;
-import java.lang.reflect.Field;
-
-import static tools.Consts.STRINGS.SP;
 
 public class ActionLog {
     public Experiment.ACTION type;
@@ -16,6 +13,12 @@ public class ActionLog {
 
     public long moment;
 
+    /**
+     * Empty constructor (values are set later)
+     */
+    public ActionLog() {
+    }
+
     public ActionLog(Experiment.ACTION type, Point p) {
         this.type = type;
         this.x = p.x;
@@ -25,16 +28,6 @@ public class ActionLog {
 
     @Override
     public String toString() {
-        final Field[] fields = getClass().getDeclaredFields();
-        StringBuilder sb = new StringBuilder();
-        try {
-            for (Field field : fields) {
-                sb.append(field.get(this)).append(SP);
-            }
-        } catch (IllegalAccessException e) {
-            throw new RuntimeException(e);
-        }
-
-        return sb.deleteCharAt(sb.length() - 1).toString();
+        return LogSerializer.of(ActionLog.class).toString(this);
     }
 }
@@ -0,0 +1,224 @@
+package log;
+
+import experiment.Experiment;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import static tools.Consts.STRINGS.SP;
+
+/**
+ * Fixed-width binary format for the ACTIONS log
+ * File: MAGIC (int), VERSION (short), then records
+ * CONTEXT record (when task/technique/block/trial changes):
+ *      kind (byte), task (byte), technique (byte), block (short), trial (short), trialStr length (short), trialStr (UTF-8)
+ * ACTION record (ACTION_REC_LEN bytes):
+ *      kind (byte), action (byte), block (short), trial (short), x (int), y (int), moment (long)
+ */
+public class BinaryActionLog {
+    private final static String NAME = "BinaryActionLog/";
+
+    public static final int MAGIC = 0x4544414C; // "EDAL"
+    public static final short VERSION = 1;
+
+    private static final byte REC_CONTEXT = 'C';
+    private static final byte REC_ACTION = 'A';
+    public static final int ACTION_REC_LEN = 1 + 1 + 2 + 2 + 4 + 4 + 8;
+
+    private final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel mChannel;
+    private final ByteBuffer mBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private long mFileLength; // Bytes written to the file
+
+    // Last written context
+    private Experiment.TASK mTask;
+    private Experiment.TECHNIQUE mTechnique;
+    private int mBlockNum = -1, mTrialNum = -1;
+    private String mTrialStr;
+
+    // -------------------------------------------------------------------------------------------
+
+    /**
+     * Open (append) the binary file. Writes the file header if the file is empty
+     * @param file File
+     * @throws IOException If can't open the file
+     */
+    public BinaryActionLog(File file) throws IOException {
+        mChannel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+
+        mFileLength = mChannel.size();
+        if (mFileLength == 0) {
+            mBuffer.putInt(MAGIC).putShort(VERSION);
+        }
+    }
+
+    /**
+     * Get the position of the next record in the file (incl. the buffered ones)
+     * @return Position (bytes)
+     */
+    public long getPosition() {
+        return mFileLength + mBuffer.position();
+    }
+
+    /**
+     * Write the actions of a buffer (and the context record before them, if changed)
+     * @param actions ActionBuffer
+     * @param actionLog ActionLog to reuse for reading the actions
+     * @throws IOException If can't write to the file
+     */
+    public void write(ActionBuffer actions, ActionLog actionLog) throws IOException {
+        final String trialStr = String.valueOf(actions.trialStr);
+        if (actions.task != mTask || actions.technique != mTechnique
+                || actions.block_num != mBlockNum || actions.trial_num != mTrialNum
+                || !trialStr.equals(mTrialStr)) {
+            writeContext(actions, trialStr);
+        }
+
+        for (int ai = 0; ai < actions.size(); ai++) {
+            actions.get(ai, actionLog);
+            if (mBuffer.remaining() < ACTION_REC_LEN) flush();
+
+            mBuffer.put(REC_ACTION)
+                    .put((byte) actionLog.type.ordinal())
+                    .putShort((short) actions.block_num)
+                    .putShort((short) actions.trial_num)
+                    .putInt(actionLog.x)
+                    .putInt(actionLog.y)
+                    .putLong(actionLog.moment);
+        }
+    }
+
+    /**
+     * Write the buffered records to the file
+     * @throws IOException If can't write to the file
+     */
+    public void flush() throws IOException {
+        mBuffer.flip();
+        while (mBuffer.hasRemaining()) mFileLength += mChannel.write(mBuffer);
+        mBuffer.clear();
+    }
+
+    /**
+     * Force the written records to the disk
+     * @throws IOException If can't write to the file
+     */
+    public void force() throws IOException {
+        mChannel.force(false);
+    }
+
+    /**
+     * Flush and close the file
+     * @throws IOException If can't write to the file
+     */
+    public void close() throws IOException {
+        flush();
+        mChannel.close();
+    }
+
+    private void writeContext(ActionBuffer actions, String trialStr) throws IOException {
+        final byte[] trialStrBytes = trialStr.getBytes(StandardCharsets.UTF_8);
+        if (mBuffer.remaining() < 9 + trialStrBytes.length) flush();
+
+        mBuffer.put(REC_CONTEXT)
+                .put((byte) actions.task.ordinal())
+                .put((byte) actions.technique.ordinal())
+                .putShort((short) actions.block_num)
+                .putShort((short) actions.trial_num)
+                .putShort((short) trialStrBytes.length)
+                .put(trialStrBytes);
+
+        mTask = actions.task;
+        mTechnique = actions.technique;
+        mBlockNum = actions.block_num;
+        mTrialNum = actions.trial_num;
+        mTrialStr = trialStr;
+    }
+
+    /**
+     * Convert a binary ACTIONS file to the text layout (same as the TEXT format, incl. the header)
+     * @param binFile Binary file
+     * @param out Writer for the text
+     * @throws IOException If can't read the file or it's not in the binary format
+     */
+    public static void toText(Path binFile, Writer out) throws IOException {
+        final PrintWriter pw = new PrintWriter(new BufferedWriter(out));
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(binFile)))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not a binary ACTIONS log: " + binFile);
+            final short version = in.readShort();
+            if (version != VERSION) throw new IOException("Unsupported version: " + version);
+
+            pw.println(GeneralLog.getLogHeader() + SP + LogSerializer.of(ActionLog.class).getHeader());
+
+            final Experiment.TASK[] tasks = Experiment.TASK.values();
+            final Experiment.TECHNIQUE[] techniques = Experiment.TECHNIQUE.values();
+            final Experiment.ACTION[] actions = Experiment.ACTION.values();
+
+            Experiment.TASK task = null;
+            Experiment.TECHNIQUE technique = null;
+            String trialStr = "";
+
+            int kind;
+            while ((kind = in.read()) != -1) {
+                switch (kind) {
+                    case REC_CONTEXT -> {
+                        task = tasks[in.readByte()];
+                        technique = techniques[in.readByte()];
+                        in.readShort(); // block
+                        in.readShort(); // trial
+                        final byte[] trialStrBytes = new byte[in.readShort()];
+                        in.readFully(trialStrBytes);
+                        trialStr = new String(trialStrBytes, StandardCharsets.UTF_8);
+                    }
+
+                    case REC_ACTION -> {
+                        final Experiment.ACTION action = actions[in.readByte()];
+                        final int block = in.readShort();
+                        final int trial = in.readShort();
+                        final int x = in.readInt();
+                        final int y = in.readInt();
+                        final long moment = in.readLong();
+
+                        pw.append(String.valueOf(task)).append(SP)
+                                .append(String.valueOf(technique)).append(SP)
+                                .append(String.valueOf(block)).append(SP)
+                                .append(String.valueOf(trial)).append(SP)
+                                .append(trialStr).append(SP)
+                                .append(action.name()).append(SP)
+                                .append(String.valueOf(x)).append(SP)
+                                .append(String.valueOf(y)).append(SP)
+                                .append(String.valueOf(moment))
+                                .println();
+                    }
+
+                    default -> throw new IOException("Corrupt record kind: " + kind);
+                }
+            }
+        }
+
+        pw.flush();
+    }
+
+    /**
+     * Convert binary ACTIONS logs to text
+     * @param args [binary file] [text file]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: BinaryActionLog <ACTIONS.bin> <ACTIONS.txt>");
+            return;
+        }
+
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(args[1]))) {
+            toText(Paths.get(args[0]), out);
+        }
+    }
+}
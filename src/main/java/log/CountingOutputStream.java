@@ -0,0 +1,62 @@
+package log;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * OutputStream that counts the bytes written through it (= position in the file)
+ * flush() stops here (flushing the writers only to get the position shouldn't reach the file); flushThrough() doesn't
+ */
+public class CountingOutputStream extends FilterOutputStream {
+
+    private long mCount;
+
+    /**
+     * Constructor
+     * @param out Underlying stream
+     * @param startCount Bytes already in the file
+     */
+    public CountingOutputStream(OutputStream out, long startCount) {
+        super(out);
+        mCount = startCount;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        mCount++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        mCount += len;
+    }
+
+    /**
+     * Keep the data in the underlying stream (see flushThrough)
+     */
+    @Override
+    public void flush() {
+    }
+
+    /**
+     * Flush the underlying stream (e.g., to the file)
+     * @throws IOException If can't write
+     */
+    public void flushThrough() throws IOException {
+        out.flush();
+    }
+
+    public long getCount() {
+        return mCount;
+    }
+
+    /**
+     * Count from zero (e.g., at the start of a compressed frame)
+     */
+    public void reset() {
+        mCount = 0;
+    }
+}
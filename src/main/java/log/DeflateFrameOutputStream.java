@@ -0,0 +1,218 @@
+package log;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * OutputStream that compresses (Deflater) the data into independent frames (one per block)
+ * Frame: MAGIC (int), block_num (int), raw length (int), compressed length (int), compressed data
+ * Data is only written to the file when a frame ends (endFrame)
+ * Block numbers can repeat in a file (techniques, tasks, appended sessions) => read by the frame's position (readFrame)
+ */
+public class DeflateFrameOutputStream extends OutputStream {
+    private final static String NAME = "DeflateFrameOutputStream/";
+
+    public static final String EXTENSION = ".z";
+    public static final int MAGIC = 0x45444652; // "EDFR"
+    private static final int FRAME_HEADER_LEN = 4 * 4;
+
+    private final OutputStream mOut;
+    private final Deflater mDeflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+    private final byte[] mDeflateBuf = new byte[64 * 1024];
+    private final byte[] mOneByte = new byte[1];
+
+    private final ByteArrayOutputStream mFrame = new ByteArrayOutputStream(); // Compressed data of the frame
+    private int mRawLength;
+    private long mFramePosition; // Where the current frame will be in the file
+
+    // -------------------------------------------------------------------------------------------
+
+    /**
+     * Constructor
+     * @param out Underlying stream (the file)
+     * @param position Current length of the file (where the first frame will be)
+     */
+    public DeflateFrameOutputStream(OutputStream out, long position) {
+        mOut = out;
+        mFramePosition = position;
+    }
+
+    /**
+     * Get the position of the current frame in the file
+     * @return Position (bytes)
+     */
+    public long getFramePosition() {
+        return mFramePosition;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        mOneByte[0] = (byte) b;
+        write(mOneByte, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        mDeflater.setInput(b, off, len);
+        while (!mDeflater.needsInput()) deflate();
+        mRawLength += len;
+    }
+
+    /**
+     * End the current frame and write it to the file
+     * @param blockNum Block of the frame's data
+     * @throws IOException If can't write to the file
+     */
+    public void endFrame(int blockNum) throws IOException {
+        if (mRawLength == 0) return;
+
+        mDeflater.finish();
+        while (!mDeflater.finished()) deflate();
+
+        final DataOutputStream dos = new DataOutputStream(mOut);
+        dos.writeInt(MAGIC);
+        dos.writeInt(blockNum);
+        dos.writeInt(mRawLength);
+        dos.writeInt(mFrame.size());
+        mFrame.writeTo(mOut);
+        mOut.flush();
+
+        mFramePosition += FRAME_HEADER_LEN + mFrame.size();
+        mDeflater.reset();
+        mFrame.reset();
+        mRawLength = 0;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        mOut.flush(); // Frame data is only written in endFrame
+    }
+
+    /**
+     * Close the file (the data after the last endFrame is discarded)
+     */
+    @Override
+    public void close() throws IOException {
+        mDeflater.end();
+        mOut.close();
+    }
+
+    private void deflate() {
+        final int n = mDeflater.deflate(mDeflateBuf);
+        mFrame.write(mDeflateBuf, 0, n);
+    }
+
+    /**
+     * Decompress the (first) frame of a block. Other frames are skipped without decompressing
+     * @param file Compressed log file
+     * @param blockNum Block number
+     * @return Data of the block (null if not found)
+     * @throws IOException If can't read the file or it's corrupt
+     */
+    public static byte[] readBlock(Path file, int blockNum) throws IOException {
+        try (FileChannel channel = FileChannel.open(file)) {
+            final DataInputStream in = new DataInputStream(Channels.newInputStream(channel));
+
+            long pos = 0;
+            while (pos < channel.size()) {
+                channel.position(pos);
+                if (in.readInt() != MAGIC) throw new IOException("Corrupt frame at " + pos);
+                final int frameBlockNum = in.readInt();
+                final int rawLength = in.readInt();
+                final int compLength = in.readInt();
+
+                if (frameBlockNum == blockNum) {
+                    return inflate(in.readNBytes(compLength), rawLength);
+                }
+
+                pos += FRAME_HEADER_LEN + compLength;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Decompress the frame at a position
+     * @param file Compressed log file
+     * @param position Position of the frame (from getFramePosition)
+     * @return Data of the frame
+     * @throws IOException If can't read the file or it's corrupt
+     */
+    public static byte[] readFrame(Path file, long position) throws IOException {
+        try (FileChannel channel = FileChannel.open(file)) {
+            channel.position(position);
+            final DataInputStream in = new DataInputStream(Channels.newInputStream(channel));
+
+            if (in.readInt() != MAGIC) throw new IOException("Corrupt frame at " + position);
+            in.readInt(); // block_num
+            final int rawLength = in.readInt();
+            final int compLength = in.readInt();
+
+            return inflate(in.readNBytes(compLength), rawLength);
+        }
+    }
+
+    /**
+     * Decompress a whole file (all frames, in order)
+     * @param file Compressed log file
+     * @param out Stream for the data
+     * @throws IOException If can't read the file or it's corrupt
+     */
+    public static void readAll(Path file, OutputStream out) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file.toFile())))) {
+            while (in.available() > 0) {
+                if (in.readInt() != MAGIC) throw new IOException("Corrupt frame in " + file);
+                in.readInt(); // block_num
+                final int rawLength = in.readInt();
+                final int compLength = in.readInt();
+
+                out.write(inflate(in.readNBytes(compLength), rawLength));
+            }
+        }
+    }
+
+    private static byte[] inflate(byte[] compressed, int rawLength) throws IOException {
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            final byte[] result = new byte[rawLength];
+            int n = 0;
+            while (n < rawLength && !inflater.finished()) {
+                n += inflater.inflate(result, n, rawLength - n);
+            }
+
+            return result;
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Decompress a log file (or only one block of it)
+     * @param args [compressed file] [output file] ([block_num])
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: DeflateFrameOutputStream <log.z> <output> [block_num]");
+            return;
+        }
+
+        try (OutputStream out = new FileOutputStream(args[1])) {
+            if (args.length > 2) {
+                final byte[] block = readBlock(Paths.get(args[0]), Integer.parseInt(args[2]));
+                if (block != null) out.write(block);
+            } else {
+                readAll(Paths.get(args[0]), out);
+            }
+        }
+    }
+}
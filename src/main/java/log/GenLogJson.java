@@ -0,0 +1,61 @@
+package log;
+
+import com.google.gson.Gson;
+import experiment.Experiment;
+
+/**
+ * GENLOG payload of a trial (GeneralLog as JSON), serialized once when the block is laid out
+ * Only the block/trial numbers are put in at send time; the result is the same as Gson.toJson(GeneralLog)
+ */
+public class GenLogJson {
+    private final static String NAME = "GenLogJson/";
+
+    private static final Gson GSON = new Gson();
+
+    private static final String BLOCK_KEY = "\"block_num\":";
+    private static final String TRIAL_KEY = ",\"trial_num\":";
+    private static final String NUMS_MARK = BLOCK_KEY + 0 + TRIAL_KEY + 0; // Where the numbers go
+
+    private final String mTrialStr; // Also for the TRIALS/ACTIONS logs
+    private final String mHead; // Until the block number
+    private final String mTail; // After the trial number
+
+    /**
+     * Serialize the fixed part
+     * @param task Task
+     * @param technique Technique
+     * @param trialStr Trial (as logged)
+     */
+    public GenLogJson(Experiment.TASK task, Experiment.TECHNIQUE technique, String trialStr) {
+        final GeneralLog genLog = new GeneralLog();
+        genLog.task = task;
+        genLog.technique = technique;
+        genLog.trialStr = trialStr;
+        mTrialStr = trialStr;
+
+        final String json = GSON.toJson(genLog, GeneralLog.class);
+        final int ind = json.indexOf(NUMS_MARK);
+        if (ind < 0) throw new IllegalStateException(NAME + "No block/trial numbers in " + json);
+
+        mHead = json.substring(0, ind + BLOCK_KEY.length());
+        mTail = json.substring(ind + NUMS_MARK.length());
+    }
+
+    public String getTrialStr() {
+        return mTrialStr;
+    }
+
+    /**
+     * Get the JSON with the numbers
+     * @param blockNum Block number
+     * @param trialNum Trial number
+     * @return JSON String
+     */
+    public String toJson(int blockNum, int trialNum) {
+        return new StringBuilder(mHead.length() + mTail.length() + 32)
+                .append(mHead).append(blockNum)
+                .append(TRIAL_KEY).append(trialNum)
+                .append(mTail)
+                .toString();
+    }
+}
@@ -23,6 +23,19 @@ public class GeneralLog {
                 Trial.getLogHeader();
     }
 
+    /**
+     * Append the log values to a buffer (same as toString)
+     * @param sb StringBuilder
+     * @return The same StringBuilder
+     */
+    public StringBuilder appendTo(StringBuilder sb) {
+        return sb.append(task).append(SP)
+                .append(technique).append(SP)
+                .append(block_num).append(SP)
+                .append(trial_num).append(SP)
+                .append(trialStr);
+    }
+
     @Override
     public String toString() {
         return task + SP +
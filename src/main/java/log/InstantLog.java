@@ -3,10 +3,6 @@ package log;
 import experiment.Experiment;
 import tools.Utils;
 
-import java.lang.reflect.Field;
-
-import static tools.Consts.STRINGS.SP;
-
 public class InstantLog {
     public long trial_show;             // the moment trial is shown on the screen
 
@@ -54,6 +50,11 @@ public class InstantLog {
     public long first_revert;
     public long last_revert;
 
+    // last grab/release/revert moments when the PC received them (first/last_* are when they happened on Moose)
+    public long last_grab_receive;
+    public long last_release_receive;
+    public long last_revert_receive;
+
     public void logTrialShow() {
         if (trial_show == 0) trial_show = Utils.nowMillis();
     }
@@ -71,13 +72,10 @@ public class InstantLog {
         }
     }
 
-    public void logGrab() {
-        if (first_grab == 0) {
-            first_grab = Utils.nowMillis();
-            last_grab = Utils.nowMillis();
-        } else {
-            last_grab = Utils.nowMillis();
-        }
+    public void logGrab(long time, long receiveTime) {
+        if (first_grab == 0) first_grab = time;
+        last_grab = time;
+        last_grab_receive = receiveTime;
     }
 
     public void logDragStart() {
@@ -133,22 +131,16 @@ public class InstantLog {
         }
     }
 
-    public void logRelease() {
-        if (first_release == 0) {
-            first_release = Utils.nowMillis();
-            last_release = Utils.nowMillis();
-        } else {
-            last_release = Utils.nowMillis();
-        }
+    public void logRelease(long time, long receiveTime) {
+        if (first_release == 0) first_release = time;
+        last_release = time;
+        last_release_receive = receiveTime;
     }
 
-    public void logRevert() {
-        if (first_revert == 0) {
-            first_revert = Utils.nowMillis();
-            last_revert = Utils.nowMillis();
-        } else {
-            last_revert = Utils.nowMillis();
-        }
+    public void logRevert(long time, long receiveTime) {
+        if (first_revert == 0) first_revert = time;
+        last_revert = time;
+        last_revert_receive = receiveTime;
     }
 
     public int getPointTime() {
@@ -229,16 +221,6 @@ public class InstantLog {
 
     @Override
     public String toString() {
-        final Field[] fields = getClass().getDeclaredFields();
-        StringBuilder sb = new StringBuilder();
-        try {
-            for (Field field : fields) {
-                sb.append(field.getLong(this)).append(SP);
-            }
-        } catch (IllegalAccessException e) {
-            throw new RuntimeException(e);
-        }
-
-        return sb.deleteCharAt(sb.length() - 1).toString();
+        return LogSerializer.of(InstantLog.class).toString(this);
     }
 }
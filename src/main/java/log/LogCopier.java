@@ -0,0 +1,155 @@
+package log;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Copies the log files of a staging folder (fast, local) to the final folder in the background
+ * The data is copied into <file>.part (only the new bytes each time); on finish, the parts replace the final files
+ * by an atomic move and the staged files are deleted
+ */
+public class LogCopier {
+    private final static String NAME = "LogCopier/";
+
+    public static final String PART_EXTENSION = ".part";
+
+    private final Path mStagingDir;
+    private final Path mFinalDir;
+    private final ExecutorService mExecutor;
+
+    private final Map<String, Long> mCopied = new HashMap<>(); // Bytes copied from each file (only the copier thread)
+
+    // -------------------------------------------------------------------------------------------
+
+    /**
+     * Constructor
+     * @param stagingDir Folder where the files are written
+     * @param finalDir Folder where the files should end up
+     */
+    public LogCopier(Path stagingDir, Path finalDir) {
+        mStagingDir = stagingDir;
+        mFinalDir = finalDir;
+
+        mExecutor = Executors.newSingleThreadExecutor(r -> {
+            final Thread thread = new Thread(r, "LogCopier-" + finalDir.getFileName());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Copy the existing final files (with a prefix) to the staging folder, if not already there
+     * (so the logs continue the same files)
+     * @param prefix Prefix of the file names
+     * @throws IOException If can't copy
+     */
+    public void stage(String prefix) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(mFinalDir, prefix + "*")) {
+            for (Path file : files) {
+                if (file.toString().endsWith(PART_EXTENSION)) continue;
+
+                final Path staged = mStagingDir.resolve(file.getFileName());
+                if (Files.notExists(staged)) Files.copy(file, staged);
+            }
+        }
+    }
+
+    /**
+     * Copy the new data of the staged files (in the background)
+     * @param lengths Written lengths of files whose size on disk is larger (e.g., mapped), by file name
+     */
+    public void copy(Map<String, Long> lengths) {
+        mExecutor.execute(() -> {
+            try {
+                copyAll(lengths);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * Copy the rest of the staged files and move them to the final folder (waits until done)
+     * The staged files must be closed
+     */
+    public void finish() {
+        final Future<?> done = mExecutor.submit(() -> {
+            try {
+                copyAll(Map.of());
+
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(mStagingDir)) {
+                    for (Path staged : files) {
+                        final Path part = getPart(staged);
+                        if (Files.notExists(part)) continue;
+
+                        move(part, mFinalDir.resolve(staged.getFileName()));
+                        Files.delete(staged);
+                    }
+                }
+                mCopied.clear();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+
+        try {
+            done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Copy the new bytes of all the staged files to their parts
+     * @param lengths Written lengths (by file name), otherwise the size of the file
+     * @throws IOException If can't copy
+     */
+    private void copyAll(Map<String, Long> lengths) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(mStagingDir)) {
+            for (Path staged : files) {
+                final String name = staged.getFileName().toString();
+
+                try (FileChannel src = FileChannel.open(staged, StandardOpenOption.READ);
+                     FileChannel dst = FileChannel.open(getPart(staged),
+                             StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                    final long length = lengths.getOrDefault(name, src.size());
+                    long pos = mCopied.getOrDefault(name, 0L);
+
+                    while (pos < length) {
+                        pos += src.transferTo(pos, length - pos, dst.position(pos));
+                    }
+                    dst.truncate(length); // Parts of a file that was shortened (e.g., mapped on close)
+
+                    mCopied.put(name, Math.min(pos, length));
+                }
+            }
+        }
+    }
+
+    private Path getPart(Path staged) {
+        return mFinalDir.resolve(staged.getFileName() + PART_EXTENSION);
+    }
+
+    /**
+     * Move a file atomically (replaces the target), if supported
+     * @param source Source
+     * @param target Target
+     * @throws IOException If can't move
+     */
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
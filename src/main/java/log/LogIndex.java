@@ -0,0 +1,194 @@
+package log;
+
+import experiment.Experiment;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static tools.Consts.STRINGS.SP;
+
+/**
+ * Sidecar index of a log file (<log file>.idx)
+ * Each line maps a trial (task, technique, block_num, trial_num) to the offset and length (bytes) of its records
+ * For compressed logs (DeflateFrameOutputStream), the offset is in the decompressed frame at frame (file position)
+ * For the others, frame is -1
+ */
+public class LogIndex {
+    private final static String NAME = "LogIndex/";
+
+    public static final String EXTENSION = ".idx";
+    public static final String HEADER = "task;technique;block_num;trial_num;offset;length;frame";
+
+    private final PrintWriter mIdxPW;
+
+    // Current segment
+    private Experiment.TASK mTask;
+    private Experiment.TECHNIQUE mTechnique;
+    private int mBlockNum = -1, mTrialNum = -1;
+    private long mStart = -1;
+    private long mFrame = -1;
+
+    // -------------------------------------------------------------------------------------------
+
+    /**
+     * Open (append) the index of a log file
+     * @param logFile Log file
+     * @throws IOException If can't open the index file
+     */
+    public LogIndex(File logFile) throws IOException {
+        final File idxFile = new File(logFile.getPath() + EXTENSION);
+        final boolean empty = idxFile.length() == 0;
+
+        mIdxPW = new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(idxFile, true))));
+        if (empty) mIdxPW.println(HEADER);
+    }
+
+    /**
+     * Check if a trial is the current segment's
+     * @return True if the same
+     */
+    public boolean isCurrent(Experiment.TASK task, Experiment.TECHNIQUE technique, int blockNum, int trialNum) {
+        return mStart >= 0
+                && task == mTask && technique == mTechnique
+                && blockNum == mBlockNum && trialNum == mTrialNum;
+    }
+
+    /**
+     * Start the segment of a trial (ends the current one)
+     * @param offset Position of the trial's first record in the log file (in the frame, if compressed)
+     * @param frame Position of the frame in the log file (-1 if not compressed)
+     */
+    public void startSegment(Experiment.TASK task, Experiment.TECHNIQUE technique, int blockNum, int trialNum,
+                             long offset, long frame) {
+        endSegment(offset);
+
+        mTask = task;
+        mTechnique = technique;
+        mBlockNum = blockNum;
+        mTrialNum = trialNum;
+        mStart = offset;
+        mFrame = frame;
+    }
+
+    /**
+     * End the current segment
+     * @param offset Position after the segment's last record in the log file
+     */
+    public void endSegment(long offset) {
+        if (mStart >= 0 && offset > mStart) {
+            mIdxPW.append(String.valueOf(mTask)).append(SP)
+                    .append(String.valueOf(mTechnique)).append(SP)
+                    .append(String.valueOf(mBlockNum)).append(SP)
+                    .append(String.valueOf(mTrialNum)).append(SP)
+                    .append(String.valueOf(mStart)).append(SP)
+                    .append(String.valueOf(offset - mStart)).append(SP)
+                    .append(String.valueOf(mFrame))
+                    .println();
+        }
+
+        mStart = -1;
+    }
+
+    public void flush() {
+        mIdxPW.flush();
+    }
+
+    /**
+     * End the current segment and close the index
+     * @param offset End of the log file
+     */
+    public void close(long offset) {
+        endSegment(offset);
+        mIdxPW.close();
+    }
+
+    /**
+     * Find the segments (offset, length, frame) of a trial in a log file
+     * @param logFile Log file (the index is next to it)
+     * @return List of {offset, length, frame} (empty if not found)
+     * @throws IOException If can't read the index
+     */
+    public static List<long[]> find(Path logFile,
+                                    Experiment.TASK task, Experiment.TECHNIQUE technique,
+                                    int blockNum, int trialNum) throws IOException {
+        final List<long[]> result = new ArrayList<>();
+        final String key = task + SP + technique + SP + blockNum + SP + trialNum + SP;
+
+        final Path idxFile = Paths.get(logFile + EXTENSION);
+        try (BufferedReader br = Files.newBufferedReader(idxFile)) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.startsWith(key)) {
+                    final String[] parts = line.substring(key.length()).split(SP);
+                    final long frame = (parts.length > 2) ? Long.parseLong(parts[2]) : -1; // Older indexes: none
+                    result.add(new long[]{Long.parseLong(parts[0]), Long.parseLong(parts[1]), frame});
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Read the bytes of a trial's records from a log file (seeks to the indexed segments)
+     * @param logFile Log file (the index is next to it)
+     * @return Bytes of the records (for text logs: the lines)
+     * @throws IOException If can't read the files
+     */
+    public static byte[] readTrial(Path logFile,
+                                   Experiment.TASK task, Experiment.TECHNIQUE technique,
+                                   int blockNum, int trialNum) throws IOException {
+        final ByteArrayOutputStream result = new ByteArrayOutputStream();
+
+        // Compressed => only decompress the segments' frames (by position; block numbers can repeat in a file)
+        if (logFile.toString().endsWith(DeflateFrameOutputStream.EXTENSION)) {
+            long framePos = -1;
+            byte[] frame = null;
+            for (long[] segment : find(logFile, task, technique, blockNum, trialNum)) {
+                if (frame == null || segment[2] != framePos) {
+                    framePos = segment[2];
+                    frame = (framePos >= 0)
+                            ? DeflateFrameOutputStream.readFrame(logFile, framePos)
+                            : DeflateFrameOutputStream.readBlock(logFile, blockNum);
+                }
+                if (frame != null) result.write(frame, (int) segment[0], (int) segment[1]);
+            }
+
+            return result.toByteArray();
+        }
+
+        try (FileChannel channel = FileChannel.open(logFile)) {
+            for (long[] segment : find(logFile, task, technique, blockNum, trialNum)) {
+                channel.position(segment[0]);
+                final InputStream in = Channels.newInputStream(channel);
+                result.write(in.readNBytes((int) segment[1]));
+            }
+        }
+
+        return result.toByteArray();
+    }
+
+    /**
+     * Print a trial's records of a text log
+     * @param args [log file] [task] [technique] [block_num] [trial_num]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 5) {
+            System.out.println("Usage: LogIndex <log file> <task> <technique> <block_num> <trial_num>");
+            return;
+        }
+
+        final byte[] records = readTrial(Paths.get(args[0]),
+                Experiment.TASK.valueOf(args[1]), Experiment.TECHNIQUE.valueOf(args[2]),
+                Integer.parseInt(args[3]), Integer.parseInt(args[4]));
+        System.out.print(new String(records, StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,146 @@
+package log;
+
+import experiment.Experiment;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded lock-free multi-producer/single-consumer ring of log records
+ * Producers claim a slot, fill it and publish it. The writer thread drains the published slots in order.
+ */
+public class LogRing {
+    private final static String NAME = "LogRing/";
+
+    private final long FULL_WAIT_ns = 50_000; // Wait between retries when the ring is full (BLOCK)
+
+    public enum FULL_POLICY {
+        BLOCK, DROP
+    }
+
+    //-- One record in the ring (reused)
+    public static class Slot {
+        public int file; // Index of the log file
+        public final StringBuilder line = new StringBuilder(256);
+        public ActionBuffer actions; // Actions of a trial (instead of the line)
+
+        // Trial of the record (for the index)
+        public Experiment.TASK task;
+        public Experiment.TECHNIQUE technique;
+        public int block_num;
+        public int trial_num;
+    }
+
+    private final int mMask;
+    private final Slot[] mSlots;
+    private final AtomicLongArray mSequences; // Sequence of each slot (claimed/published state)
+
+    private final AtomicLong mHead = new AtomicLong(); // Next position to claim (producers)
+    private volatile long mTail; // Next position to drain (only the writer thread)
+
+    private final FULL_POLICY mFullPolicy;
+
+    // Stats
+    private final AtomicLong mDroppedCount = new AtomicLong();
+    private final AtomicLong mBlockedCount = new AtomicLong();
+
+    // -------------------------------------------------------------------------------------------
+
+    /**
+     * Constructor
+     * @param capacity Number of slots (rounded up to a power of two)
+     * @param fullPolicy What to do with a record when the ring is full
+     */
+    public LogRing(int capacity, FULL_POLICY fullPolicy) {
+        final int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+
+        mMask = size - 1;
+        mSlots = new Slot[size];
+        mSequences = new AtomicLongArray(size);
+        for (int si = 0; si < size; si++) {
+            mSlots[si] = new Slot();
+            mSequences.set(si, si);
+        }
+
+        mFullPolicy = fullPolicy;
+    }
+
+    /**
+     * Claim a position to fill (must be published afterwards)
+     * @return Position, or -1 if the ring was full and the record is dropped
+     */
+    public long claim() {
+        boolean blocked = false;
+        while (true) {
+            final long pos = mHead.get();
+            final long dif = mSequences.get((int) (pos & mMask)) - pos;
+
+            if (dif == 0) { // Free slot
+                if (mHead.compareAndSet(pos, pos + 1)) return pos;
+            } else if (dif < 0) { // Full
+                if (mFullPolicy == FULL_POLICY.DROP) {
+                    mDroppedCount.incrementAndGet();
+                    return -1;
+                }
+
+                if (!blocked) {
+                    mBlockedCount.incrementAndGet();
+                    blocked = true;
+                }
+                LockSupport.parkNanos(FULL_WAIT_ns);
+            }
+            // Otherwise another producer got the position => retry
+        }
+    }
+
+    /**
+     * Get the slot of a claimed position
+     * @param pos Position (from claim())
+     * @return Slot
+     */
+    public Slot slot(long pos) {
+        return mSlots[(int) (pos & mMask)];
+    }
+
+    /**
+     * Make a filled slot visible to the writer
+     * @param pos Position (from claim())
+     */
+    public void publish(long pos) {
+        mSequences.set((int) (pos & mMask), pos + 1);
+    }
+
+    /**
+     * Get the next published slot (only called from the writer thread)
+     * @return Slot or null if nothing is published. Must be released after use
+     */
+    public Slot peek() {
+        if (mSequences.get((int) (mTail & mMask)) == mTail + 1) return mSlots[(int) (mTail & mMask)];
+        else return null;
+    }
+
+    /**
+     * Release the slot got from peek() to the producers
+     */
+    public void release() {
+        mSequences.set((int) (mTail & mMask), mTail + mMask + 1);
+        mTail++;
+    }
+
+    /**
+     * Get the number of records waiting in the ring
+     * @return Number of records
+     */
+    public int getDepth() {
+        return (int) Math.max(0, mHead.get() - mTail);
+    }
+
+    public long getDroppedCount() {
+        return mDroppedCount.get();
+    }
+
+    public long getBlockedCount() {
+        return mBlockedCount.get();
+    }
+}
@@ -0,0 +1,133 @@
+package log;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+import static tools.Consts.STRINGS.SP;
+
+/**
+ * Writes the fields of a log class as a SP-delimited line (same order as the declaration)
+ * Fields are looked up once per class. Writing uses MethodHandles => no reflection or boxing per record
+ */
+public class LogSerializer {
+    private final static String NAME = "LogSerializer/";
+
+    private static final ClassValue<LogSerializer> CACHE = new ClassValue<>() {
+        @Override
+        protected LogSerializer computeValue(Class<?> type) {
+            return new LogSerializer(type);
+        }
+    };
+
+    private final String mHeader;
+    private final MethodHandle[] mGetters; // (Object)long/int/double/Object
+    private final char[] mKinds; // J (long), I (int), D (double), L (other)
+
+    // -------------------------------------------------------------------------------------------
+
+    /**
+     * Get the serializer of a class (created the first time)
+     * @param clazz Class
+     * @return LogSerializer
+     */
+    public static LogSerializer of(Class<?> clazz) {
+        return CACHE.get(clazz);
+    }
+
+    /**
+     * Constructor
+     * @param clazz Class
+     */
+    private LogSerializer(Class<?> clazz) {
+        final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+        final List<Field> fields = new ArrayList<>();
+        for (Field field : clazz.getDeclaredFields()) {
+            if (!Modifier.isStatic(field.getModifiers())) fields.add(field);
+        }
+
+        final StringBuilder header = new StringBuilder();
+        mGetters = new MethodHandle[fields.size()];
+        mKinds = new char[fields.size()];
+
+        try {
+            for (int fi = 0; fi < fields.size(); fi++) {
+                final Field field = fields.get(fi);
+                final Class<?> type = field.getType();
+
+                final Class<?> retType;
+                if (type == long.class) {
+                    mKinds[fi] = 'J';
+                    retType = long.class;
+                } else if (type == int.class) {
+                    mKinds[fi] = 'I';
+                    retType = int.class;
+                } else if (type == double.class) {
+                    mKinds[fi] = 'D';
+                    retType = double.class;
+                } else {
+                    mKinds[fi] = 'L';
+                    retType = Object.class;
+                }
+
+                mGetters[fi] = lookup.unreflectGetter(field)
+                        .asType(MethodType.methodType(retType, Object.class));
+
+                if (fi > 0) header.append(SP);
+                header.append(field.getName());
+            }
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+
+        mHeader = header.toString();
+    }
+
+    /**
+     * Get the header (names of the fields)
+     * @return SP-delimited String
+     */
+    public String getHeader() {
+        return mHeader;
+    }
+
+    /**
+     * Append the values of a log to a buffer
+     * @param sb StringBuilder
+     * @param log Log object (of the serializer's class)
+     * @return The same StringBuilder
+     */
+    public StringBuilder append(StringBuilder sb, Object log) {
+        try {
+            for (int fi = 0; fi < mGetters.length; fi++) {
+                if (fi > 0) sb.append(SP);
+
+                final MethodHandle getter = mGetters[fi];
+                switch (mKinds[fi]) {
+                    case 'J' -> sb.append((long) getter.invokeExact(log));
+                    case 'I' -> sb.append((int) getter.invokeExact(log));
+                    case 'D' -> sb.append((double) getter.invokeExact(log));
+                    default -> sb.append((Object) getter.invokeExact(log));
+                }
+            }
+        } catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+
+        return sb;
+    }
+
+    /**
+     * Get the line of a log
+     * @param log Log object (of the serializer's class)
+     * @return SP-delimited String
+     */
+    public String toString(Object log) {
+        return append(new StringBuilder(), log).toString();
+    }
+}
@@ -1,54 +1,314 @@
 package log;
 
+import experiment.Experiment;
 import panels.MainFrame;
 import tools.Utils;
 
 import java.io.*;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
 
 import static tools.Consts.STRINGS.*;
 
+/**
+ * Log session: own directory, files, IDs and writer thread. The log methods can be called from any thread
+ * get() is the default session (the app's); other sessions (e.g., simulated participants) are created with new
+ */
 public class Logger {
     private final static String NAME = "Logger/";
 
-    private static Logger self;
+    private static Logger self; // Default session
 
-    private final String TOP_LOGS_DIR = "/Users/mahmoud/Documents/Academics/PhD/MIDE/Logs";
+    private static final String TOP_LOGS_DIR = "/Users/mahmoud/Documents/Academics/PhD/MIDE/Logs";
     private static final String DRAG_LOG_DIR_NAME = "Drag";
 
+    private final int RING_CAPACITY = 1 << 14; // Records waiting for the writer thread
+    private final long FLUSH_INTERVAL_ms = 200; // Max. time a written record stays unflushed
+    private final long IDLE_WAIT_ns = 1_000_000; // Writer's wait when there's nothing to write
+
+    // Index of the log files (in the ring records)
+    private static final int TRIALS = 0;
+    private static final int INSTANTS = 1;
+    private static final int TIMES = 2;
+    private static final int ACTIONS = 3;
+
+    // Markers (in the ring records, instead of a file index)
+    private static final int TRIAL_END = 10;
+    private static final int BLOCK_END = 11;
+
+    public enum FORMAT {
+        TEXT, BINARY
+    }
+
+    // When the written records are flushed to the files (optionally also forced to the disk)
+    public enum FLUSH_POLICY {
+        TRIAL_END, BLOCK_END, GROUP_COMMIT
+    }
+
+    // How the high-rate (ACTIONS and INSTANTS) text files are written
+    public enum SINK {
+        STREAM, MAPPED
+    }
+
+    // Serializers of the logs (fields looked up once)
+    private static final LogSerializer TRIAL_SERIALIZER = LogSerializer.of(TrialLog.class);
+    private static final LogSerializer INSTANT_SERIALIZER = LogSerializer.of(InstantLog.class);
+    private static final LogSerializer TIME_SERIALIZER = LogSerializer.of(TimeLog.class);
+    private static final LogSerializer ACTION_SERIALIZER = LogSerializer.of(ActionLog.class);
+
+    private final int MAPPED_SEGMENT_SIZE = 8 * 1024 * 1024; // Bytes
+    private final int STREAM_BUFFER_SIZE = 64 * 1024; // Bytes (written to the file on commit or when full)
+
+    // Fast, local folders for staging the logs (the first existing one)
+    private static final String[] STAGING_DIRS = {"/dev/shm", System.getProperty("java.io.tmpdir")};
+    private static final String STAGING_DIR_NAME = "ExpenviLogs";
+
     private String mPcLogId;
     private String mPcDateId;
     private String mPracticePcDateId;
 
-    private static Path mLogDirectory; // Main folder for logs
-    private static Path mPcLogDirectory; // Folder log path of the participant
+    private final Path mLogDirectory; // Main folder for logs
+    private Path mPcLogDirectory; // Folder log path of the participant
+    private Path mPcStagingDirectory; // Folder where the participant's logs are written (if staged)
 
     // Different log files
     private PrintWriter mTrialLogFilePW;
     private PrintWriter mInstantLogFilePW;
     private PrintWriter mTimeLogFilePW;
     private PrintWriter mActionLogFilePW;
+    private BinaryActionLog mActionLogBin;
+    private final List<OutputStream> mLogFileStreams = new ArrayList<>(); // Underlying streams (for forcing)
+
+    // Position in each text log file and the index of the trials in it (by file index)
+    private final CountingOutputStream[] mLogFileCounters = new CountingOutputStream[ACTIONS + 1];
+    private final LogIndex[] mLogIndexes = new LogIndex[ACTIONS + 1];
+
+    // Compressed text log files (by file index) and the block of their current frames
+    private final DeflateFrameOutputStream[] mLogFileFrames = new DeflateFrameOutputStream[ACTIONS + 1];
+    private int mFrameBlockNum = -1;
+
+    private FORMAT mActionsFormat = FORMAT.TEXT;
+    private SINK mHighRateSink = SINK.STREAM;
+    private FLUSH_POLICY mFlushPolicy = FLUSH_POLICY.GROUP_COMMIT;
+    private boolean mForce = false;
+    private boolean mCompressed = false;
+    private boolean mStaged = false;
+    private LogCopier mCopier; // Copies the staged logs to the participant's folder
+
+    // Opening/closing the files (the writer thread is stopped meanwhile)
+    private final Object mFileLock = new Object();
+    private volatile boolean mOpen;
+
+    // Records are handed to the writer thread through the ring
+    private final LogRing mRing = new LogRing(RING_CAPACITY, LogRing.FULL_POLICY.BLOCK);
+    private volatile Thread mWriterThread;
+    private volatile boolean mClosing;
+
+    // Actions of the current trial are kept in memory until the trial ends
+    private final Object mActionLock = new Object();
+    private ActionBuffer mActionBuffer = new ActionBuffer();
+    private final Queue<ActionBuffer> mFreeActionBuffers = new ConcurrentLinkedQueue<>();
+
+    //----------------------------------------------------------------------------------------
+
+    //-- Runnable for writing the records to the files (in batches)
+    private class WriterRunnable implements Runnable {
+        String TAG = NAME + "WriterRunnable";
+
+        private long lastCommitTime = Utils.nowMillis();
+        private boolean dirty = false;
+
+        // Reused for writing the actions
+        private final GeneralLog genLog = new GeneralLog();
+        private final ActionLog actionLog = new ActionLog();
+        private final StringBuilder line = new StringBuilder(256);
+
+        @Override
+        public void run() {
+            while (true) {
+                final boolean closing = mClosing; // Read before draining => nothing is missed
+                final int nWritten = drain();
+
+                // Group commit: everything written in the interval is committed together
+                if (dirty && mFlushPolicy == FLUSH_POLICY.GROUP_COMMIT
+                        && Utils.nowMillis() - lastCommitTime >= FLUSH_INTERVAL_ms) {
+                    commit();
+                }
+
+                if (nWritten == 0) {
+                    if (closing) break;
+                    LockSupport.parkNanos(IDLE_WAIT_ns);
+                }
+            }
+
+            commit();
+        }
+
+        /**
+         * Write all the published records
+         * @return Number of written records
+         */
+        private int drain() {
+            int result = 0;
+            LogRing.Slot slot;
+            while ((slot = mRing.peek()) != null) {
+                switch (slot.file) {
+                    case TRIAL_END -> {
+                        if (mFlushPolicy == FLUSH_POLICY.TRIAL_END) commit();
+                    }
+
+                    case BLOCK_END -> {
+                        endFrames();
+                        if (mFlushPolicy == FLUSH_POLICY.TRIAL_END
+                                || mFlushPolicy == FLUSH_POLICY.BLOCK_END) commit();
+
+                        // Completed block => copy the staged files
+                        if (mCopier != null) {
+                            commit();
+                            mCopier.copy(getWrittenLengths());
+                        }
+                    }
+
+                    case ACTIONS -> {
+                        writeActions(slot.actions);
+                        dirty = true;
+                    }
+
+                    default -> {
+                        final PrintWriter pw = getFilePW(slot.file);
+                        if (pw != null) {
+                            mFrameBlockNum = slot.block_num;
+                            index(slot.file, slot.task, slot.technique, slot.block_num, slot.trial_num);
+                            pw.append(slot.line).println();
+                        }
+                        dirty = true;
+                    }
+                }
+                mRing.release();
+                result++;
+            }
+
+            return result;
+        }
+
+        /**
+         * Write the actions of a trial and give the buffer back
+         * @param actions ActionBuffer
+         */
+        private void writeActions(ActionBuffer actions) {
+            mFrameBlockNum = actions.block_num;
+            index(ACTIONS, actions.task, actions.technique, actions.block_num, actions.trial_num);
+
+            try {
+                if (mActionLogBin != null) {
+                    mActionLogBin.write(actions, actionLog);
+                } else if (mActionLogFilePW != null) {
+                    genLog.task = actions.task;
+                    genLog.technique = actions.technique;
+                    genLog.block_num = actions.block_num;
+                    genLog.trial_num = actions.trial_num;
+                    genLog.trialStr = actions.trialStr;
+
+                    for (int ai = 0; ai < actions.size(); ai++) {
+                        actions.get(ai, actionLog);
+
+                        line.setLength(0);
+                        genLog.appendTo(line).append(SP);
+                        ACTION_SERIALIZER.append(line, actionLog);
+                        mActionLogFilePW.append(line).println();
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+
+            actions.clear();
+            mFreeActionBuffers.offer(actions);
+        }
+
+        /**
+         * Start a new segment in the index of a file if the trial has changed
+         * @param file Index of the log file
+         */
+        private void index(int file,
+                           Experiment.TASK task, Experiment.TECHNIQUE technique, int blockNum, int trialNum) {
+            final LogIndex logIndex = mLogIndexes[file];
+            if (logIndex != null && !logIndex.isCurrent(task, technique, blockNum, trialNum)) {
+                final long frame = (mLogFileFrames[file] != null) ? mLogFileFrames[file].getFramePosition() : -1;
+                logIndex.startSegment(task, technique, blockNum, trialNum, getFilePosition(file), frame);
+            }
+        }
+
+        /**
+         * Flush all the files (and force them to the disk, if set)
+         */
+        private void commit() {
+            if (mTrialLogFilePW != null) mTrialLogFilePW.flush();
+            if (mInstantLogFilePW != null) mInstantLogFilePW.flush();
+            if (mTimeLogFilePW != null) mTimeLogFilePW.flush();
+            if (mActionLogFilePW != null) mActionLogFilePW.flush();
+
+            for (LogIndex logIndex : mLogIndexes) {
+                if (logIndex != null) logIndex.flush();
+            }
+
+            try {
+                // The writers' flush stops at the counters => buffered bytes to the files
+                for (CountingOutputStream counter : mLogFileCounters) {
+                    if (counter != null) counter.flushThrough();
+                }
+                if (mActionLogBin != null) mActionLogBin.flush();
+
+                if (mForce) {
+                    for (OutputStream os : mLogFileStreams) {
+                        if (os instanceof FileOutputStream fos) fos.getChannel().force(false);
+                        else if (os instanceof MappedSegmentOutputStream mos) mos.force();
+                    }
+                    if (mActionLogBin != null) mActionLogBin.force();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+
+            lastCommitTime = Utils.nowMillis();
+            dirty = false;
+        }
+    }
 
     // -------------------------------------------------------------------------------------------
 
     /**
-     * Get the instance
-     * @return Singleton instance
+     * Get the default session
+     * @return Default instance
      */
-    public static Logger get() {
+    public static synchronized Logger get() {
         if (self == null) self = new Logger();
         return self;
     }
 
     /**
-     * Private constructor
+     * Constructor (default session, in the Drag folder of TOP_LOGS_DIR)
      */
     private Logger() {
-        // Create log directory
 //        final Path parentPath = Paths.get("").toAbsolutePath().getParent();
-        final Path parentPath = Paths.get(TOP_LOGS_DIR);
-        mLogDirectory = parentPath.resolve(DRAG_LOG_DIR_NAME);
+        this(Paths.get(TOP_LOGS_DIR).resolve(DRAG_LOG_DIR_NAME));
+    }
+
+    /**
+     * Constructor (a separate session)
+     * @param logDirectory Main folder for the session's logs (created if doesn't exist)
+     */
+    public Logger(Path logDirectory) {
+        mLogDirectory = logDirectory;
 
         // Create the folder if doesn't exist
         Utils.createDirIfNotExisted(mLogDirectory);
@@ -61,15 +321,96 @@ public class Logger {
     public void  initLog(String logId) {
         final String TAG = NAME + "logParticipant";
 
-        mPcLogId = logId;
+        synchronized (mFileLock) {
+            mPcLogId = logId;
+
+            // Create a folder for the participant (if not already created)
+            mPcLogDirectory = mLogDirectory.resolve(mPcLogId);
+            Utils.createDirIfNotExisted(mPcLogDirectory);
+
+            if (mStaged) {
+                mPcStagingDirectory = getStagingRoot()
+                        .resolve(mLogDirectory.getFileName().toString())
+                        .resolve(mPcLogId);
+                try {
+                    Files.createDirectories(mPcStagingDirectory);
+                    mCopier = new LogCopier(mPcStagingDirectory, mPcLogDirectory);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    mCopier = null; // Write directly
+                }
+            } else {
+                mCopier = null;
+            }
 
-        // Create a folder for the participant (if not already created)
-        mPcLogDirectory = mLogDirectory.resolve(mPcLogId);
-        Utils.createDirIfNotExisted(mPcLogDirectory);
+            // Create/open log files
+            openLogFilesToWrite();
+        }
 
-        // Create/open log files
-        openLogFilesToWrite();
+    }
 
+    /**
+     * Set the format of the ACTIONS log (before initLog)
+     * @param format TEXT (*_ACTIONS.txt) or BINARY (*_ACTIONS.bin, convert with BinaryActionLog)
+     */
+    public void setActionsFormat(FORMAT format) {
+        mActionsFormat = format;
+    }
+
+    /**
+     * Set how the ACTIONS and INSTANTS text files are written (before initLog)
+     * @param sink STREAM (FileOutputStream) or MAPPED (memory-mapped segments, truncated on closeLogs)
+     */
+    public void setHighRateSink(SINK sink) {
+        mHighRateSink = sink;
+    }
+
+    /**
+     * Set when the logs are flushed
+     * @param policy TRIAL_END, BLOCK_END or GROUP_COMMIT (every FLUSH_INTERVAL_ms)
+     * @param force Also force the files to the disk (FileChannel.force) on each flush
+     */
+    public void setFlushPolicy(FLUSH_POLICY policy, boolean force) {
+        mFlushPolicy = policy;
+        mForce = force;
+    }
+
+    /**
+     * Set whether the text log files are compressed (before initLog)
+     * Each block is a separate Deflate frame (*.txt.z, read with DeflateFrameOutputStream)
+     * A block's data is only written to the file at its end (flush policies apply to the frames)
+     * @param compressed True => compress
+     */
+    public void setCompressed(boolean compressed) {
+        mCompressed = compressed;
+    }
+
+    /**
+     * Set whether the logs are written to a fast local folder (/dev/shm or java.io.tmpdir) first (before initLog)
+     * Completed blocks are copied to the participant's folder in the background.
+     * On closeLogs, the files in the participant's folder are replaced (atomic move)
+     * @param staged True => stage
+     */
+    public void setStaged(boolean staged) {
+        mStaged = staged;
+    }
+
+    /**
+     * Mark the end of a trial (flush point for TRIAL_END)
+     * The trial's actions are handed to the writer thread (written during the delay before the next trial)
+     */
+    public void endTrial() {
+        synchronized (mActionLock) {
+            flushActions();
+        }
+        enqueueMarker(TRIAL_END);
+    }
+
+    /**
+     * Mark the end of a block (flush point for TRIAL_END and BLOCK_END, end of the compressed frames)
+     */
+    public void endBlock() {
+        enqueueMarker(BLOCK_END);
     }
 
     public String getLogId() {
@@ -80,6 +421,14 @@ public class Logger {
         return mPracticePcDateId;
     }
 
+    /**
+     * Get the participant's log folder (set in initLog)
+     * @return Path of the folder (null before initLog)
+     */
+    public Path getPcLogDirectory() {
+        return mPcLogDirectory;
+    }
+
     /**
      * Log TrialInfo
      * @param genLog GeneralInfo
@@ -90,9 +439,9 @@ public class Logger {
 
         try {
             // Open logs if not opened
-            if (mTrialLogFilePW == null) openLogFilesToWrite();
+            ensureOpen();
 
-            mTrialLogFilePW.println(genLog + SP + trialLog);
+            enqueue(TRIALS, genLog, TRIAL_SERIALIZER, trialLog);
 
         } catch (NullPointerException e) {
 //            Main.showDialog("Problem in logging trial!");
@@ -110,9 +459,9 @@ public class Logger {
 
         try {
             // Open logs if not opened
-            if (mInstantLogFilePW == null) openLogFilesToWrite();
+            ensureOpen();
 
-            mInstantLogFilePW.println(genLog + SP + instLog);
+            enqueue(INSTANTS, genLog, INSTANT_SERIALIZER, instLog);
 
         } catch (NullPointerException e) {
 //            Main.showDialog("Problem in logging instant!");
@@ -129,9 +478,9 @@ public class Logger {
 
         try {
             // Open logs if not opened
-            if (mTimeLogFilePW == null) openLogFilesToWrite();
+            ensureOpen();
 
-            mTimeLogFilePW.println(genLog + SP + timeLog);
+            enqueue(TIMES, genLog, TIME_SERIALIZER, timeLog);
 
         } catch (NullPointerException e) {
 //            Main.showDialog("Problem in logging time!");
@@ -139,7 +488,7 @@ public class Logger {
     }
 
     /**
-     * Log ActionLog
+     * Log ActionLog (kept in memory until the end of the trial)
      * @param genLog GeneralLog
      * @param actionLog ActionLog
      */
@@ -148,9 +497,15 @@ public class Logger {
 
         try {
             // Open logs if not opened
-            if (mActionLogFilePW == null) openLogFilesToWrite();
+            ensureOpen();
+
+            synchronized (mActionLock) {
+                // Actions of another trial => write the previous ones
+                if (mActionBuffer.size() > 0 && !mActionBuffer.isContext(genLog)) flushActions();
 
-            mActionLogFilePW.println(genLog + SP + actionLog);
+                if (mActionBuffer.size() == 0) mActionBuffer.setContext(genLog);
+                mActionBuffer.add(actionLog);
+            }
 
         } catch (NullPointerException e) {
             MainFrame.get().showMessage("Problem in logging Action!");
@@ -158,45 +513,168 @@ public class Logger {
     }
 
     /**
-     * Close all log files
+     * Get the number of records waiting for the writer thread
+     * @return Queue depth
+     */
+    public int getQueueDepth() {
+        return mRing.getDepth();
+    }
+
+    /**
+     * Get the number of records dropped because the queue was full
+     * @return Dropped count
+     */
+    public long getDroppedCount() {
+        return mRing.getDroppedCount();
+    }
+
+    /**
+     * Get the number of records that had to wait because the queue was full
+     * @return Blocked count
+     */
+    public long getBlockedCount() {
+        return mRing.getBlockedCount();
+    }
+
+    /**
+     * Close all log files (after writing everything in the queue)
      */
     public void closeLogs() {
+        synchronized (mFileLock) {
+            // Records queued (by other threads) after the files were closed => re-open to write them
+            if (!mOpen && mRing.getDepth() > 0) openLogFilesToWrite();
+
+            synchronized (mActionLock) {
+                flushActions();
+            }
+            stopWriter();
+            closeFiles();
+
+            if (mCopier != null) mCopier.finish(); // Staged files => participant's folder
+        }
+    }
+
+    /**
+     * Close the files (called with mFileLock, the writer thread stopped)
+     */
+    private void closeFiles() {
+        mOpen = false;
+
+        // End the last segments of the indexes and the last frames
+        for (int fi = 0; fi < mLogIndexes.length; fi++) {
+            if (mLogIndexes[fi] != null) {
+                mLogIndexes[fi].close(getFilePosition(fi));
+                mLogIndexes[fi] = null;
+            }
+        }
+        endFrames();
+
         if (mTrialLogFilePW != null) mTrialLogFilePW.close();
         if (mInstantLogFilePW != null) mInstantLogFilePW.close();
         if (mTimeLogFilePW != null) mTimeLogFilePW.close();
         if (mActionLogFilePW != null) mActionLogFilePW.close();
+
+        try {
+            if (mActionLogBin != null) mActionLogBin.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        // Later logs re-open the files
+        mActionLogBin = null;
+        mTrialLogFilePW = null;
+        mInstantLogFilePW = null;
+        mTimeLogFilePW = null;
+        mActionLogFilePW = null;
+        Arrays.fill(mLogFileFrames, null);
+        Arrays.fill(mLogFileCounters, null);
+    }
+
+    /**
+     * End the current frames of the compressed files (only from the writer thread or when it's stopped)
+     * The index segments end with the frames (offsets are in the decompressed frame)
+     */
+    private void endFrames() {
+        for (int fi = 0; fi < mLogFileFrames.length; fi++) {
+            if (mLogFileFrames[fi] == null) continue;
+
+            try {
+                if (mLogIndexes[fi] != null) mLogIndexes[fi].endSegment(getFilePosition(fi));
+                mLogFileFrames[fi].endFrame(mFrameBlockNum);
+                mLogFileCounters[fi].reset();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Open the log files if not opened (e.g., after closeLogs)
+     */
+    private void ensureOpen() {
+        if (mOpen) return;
+
+        synchronized (mFileLock) {
+            if (!mOpen) openLogFilesToWrite();
+        }
     }
 
     /**
-     * Open the log files for writing (if not already opened)
+     * Open the log files for writing (called with mFileLock)
      */
     private void openLogFilesToWrite() {
+        // Files are only written by the writer thread => stop it while (re)opening
+        stopWriter();
 
         mPcDateId = mPcLogId + "_" + Utils.nowDate();
+        final String txtExt = mCompressed ? ".txt" + DeflateFrameOutputStream.EXTENSION : ".txt";
+
+        // Staged => continue the files already in the participant's folder
+        final Path pcLogDirectory = (mCopier != null) ? mPcStagingDirectory : mPcLogDirectory;
+        if (mCopier != null) {
+            try {
+                mCopier.stage(mPcDateId);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
 
         // Log files for the participant
-        final File trialsLogFile = mPcLogDirectory.resolve(mPcDateId + "_" + "TRIALS.txt").toFile();
-        final File instantsLogFile = mPcLogDirectory.resolve(mPcDateId + "_" + "INSTANTS.txt").toFile();
-        final File timesLogFile = mPcLogDirectory.resolve(mPcDateId + "_" + "TIMES.txt").toFile();
-        final File actionsLogFile = mPcLogDirectory.resolve(mPcDateId + "_" + "ACTIONS.txt").toFile();
-
-        // Create files (w/ autoflash) and if not existed, write headers. Append is for later writings
+        final File trialsLogFile = pcLogDirectory.resolve(mPcDateId + "_" + "TRIALS" + txtExt).toFile();
+        final File instantsLogFile = pcLogDirectory.resolve(mPcDateId + "_" + "INSTANTS" + txtExt).toFile();
+        final File timesLogFile = pcLogDirectory.resolve(mPcDateId + "_" + "TIMES" + txtExt).toFile();
+        final File actionsLogFile = pcLogDirectory.resolve(mPcDateId + "_" + "ACTIONS" + txtExt).toFile();
+        final File actionsBinLogFile = pcLogDirectory.resolve(mPcDateId + "_" + "ACTIONS.bin").toFile();
+
+        // Mapped files are extended when opened => check before
+        final boolean instantsEmpty = instantsLogFile.length() == 0;
+        final boolean actionsEmpty = actionsLogFile.length() == 0;
+
+        // Create files (flushed by the writer thread) and if not existed, write headers. Append is for later writings
+        mLogFileStreams.clear();
+        Arrays.fill(mLogFileFrames, null);
+        Arrays.fill(mLogFileCounters, null);
         try {
-            mTrialLogFilePW = new PrintWriter(
-                    new FileOutputStream(trialsLogFile, true),
-                    true);
-
-            mInstantLogFilePW = new PrintWriter(
-                    new FileOutputStream(instantsLogFile, true),
-                    true);
-
-            mTimeLogFilePW = new PrintWriter(
-                    new FileOutputStream(timesLogFile, true),
-                    true);
-
-            mActionLogFilePW = new PrintWriter(
-                    new FileOutputStream(actionsLogFile, true),
-                    true);
+            mTrialLogFilePW = new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+                    openStream(TRIALS, new FileOutputStream(trialsLogFile, true), trialsLogFile.length()))));
+            mLogIndexes[TRIALS] = new LogIndex(trialsLogFile);
+
+            mInstantLogFilePW = new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+                    openHighRateStream(INSTANTS, instantsLogFile))));
+            mLogIndexes[INSTANTS] = new LogIndex(instantsLogFile);
+
+            mTimeLogFilePW = new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+                    openStream(TIMES, new FileOutputStream(timesLogFile, true), timesLogFile.length()))));
+            mLogIndexes[TIMES] = new LogIndex(timesLogFile);
+
+            if (mActionsFormat == FORMAT.BINARY) {
+                mActionLogBin = new BinaryActionLog(actionsBinLogFile);
+                mLogIndexes[ACTIONS] = new LogIndex(actionsBinLogFile);
+            } else {
+                mActionLogFilePW = new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+                        openHighRateStream(ACTIONS, actionsLogFile))));
+                mLogIndexes[ACTIONS] = new LogIndex(actionsLogFile);
+            }
 
             //-- Write headers (only the first time)
             if (Utils.isFileEmpty(trialsLogFile)) {
@@ -207,28 +685,213 @@ public class Logger {
 //                        Utils.classPropsNames(TrialLog.class).replace("trial;", ""));
 
                 mTrialLogFilePW.println(GeneralLog.getLogHeader() + SP +
-                        Utils.classPropsNames(TrialLog.class));
+                        TRIAL_SERIALIZER.getHeader());
             }
 
-            if (Utils.isFileEmpty(instantsLogFile)) {
+            if (instantsEmpty) {
                 mInstantLogFilePW.println(GeneralLog.getLogHeader() + SP +
-                        Utils.classPropsNames(InstantLog.class));
+                        INSTANT_SERIALIZER.getHeader());
             }
 
             if (Utils.isFileEmpty(timesLogFile)) {
                 mTimeLogFilePW.println(GeneralLog.getLogHeader() + SP +
-                        Utils.classPropsNames(TimeLog.class));
+                        TIME_SERIALIZER.getHeader());
             }
 
-            if (Utils.isFileEmpty(actionsLogFile)) {
+            if (mActionLogFilePW != null && actionsEmpty) {
                 mActionLogFilePW.println(GeneralLog.getLogHeader() + SP +
-                        Utils.classPropsNames(ActionLog.class));
+                        ACTION_SERIALIZER.getHeader());
             }
 
         } catch (IOException e) {
             e.printStackTrace();
             MainFrame.get().showMessage("Problem in opening log files");
         }
+
+        startWriter();
+        mOpen = true;
+    }
+
+    /**
+     * Open a high-rate (ACTIONS/INSTANTS) file for appending, based on the set sink
+     * @param fileInd Index of the log file
+     * @param file File
+     * @return OutputStream
+     * @throws IOException If can't open the file
+     */
+    private OutputStream openHighRateStream(int fileInd, File file) throws IOException {
+        if (mHighRateSink == SINK.MAPPED) {
+            final MappedSegmentOutputStream mos = new MappedSegmentOutputStream(file, MAPPED_SEGMENT_SIZE);
+            return openStream(fileInd, mos, mos.getPosition());
+        } else {
+            return openStream(fileInd, new FileOutputStream(file, true), file.length());
+        }
+    }
+
+    /**
+     * Keep an opened file stream (to force it to the disk later) and count the bytes written to it
+     * If compressed, the data goes through a DeflateFrameOutputStream (counted from the start of the frame)
+     * File streams are buffered under the counter, so getting the position doesn't write to the file
+     * @param fileInd Index of the log file
+     * @param os OutputStream
+     * @param length Current length of the file
+     * @return Counting OutputStream
+     */
+    private OutputStream openStream(int fileInd, OutputStream os, long length) {
+        mLogFileStreams.add(os);
+
+        if (mCompressed) {
+            mLogFileFrames[fileInd] = new DeflateFrameOutputStream(os, length);
+            mLogFileCounters[fileInd] = new CountingOutputStream(mLogFileFrames[fileInd], 0);
+        } else if (os instanceof FileOutputStream) {
+            mLogFileCounters[fileInd] = new CountingOutputStream(new BufferedOutputStream(os, STREAM_BUFFER_SIZE), length);
+        } else { // Mapped => already in memory
+            mLogFileCounters[fileInd] = new CountingOutputStream(os, length);
+        }
+
+        return mLogFileCounters[fileInd];
+    }
+
+    /**
+     * Get the position of the next record in a log file (only from the writer thread or when it's stopped)
+     * The writer's flush stops at the counter (not written to the file)
+     * @param file Index of the log file
+     * @return Position (bytes)
+     */
+    private long getFilePosition(int file) {
+        if (file == ACTIONS && mActionLogBin != null) return mActionLogBin.getPosition();
+
+        final PrintWriter pw = getFilePW(file);
+        if (pw == null || mLogFileCounters[file] == null) return 0;
+
+        pw.flush(); // Buffered chars => counted bytes (still in memory)
+        return mLogFileCounters[file].getCount();
+    }
+
+    /**
+     * Get the written lengths of the files whose size is larger (mapped) (only from the writer thread)
+     * @return Map of file name to length
+     */
+    private Map<String, Long> getWrittenLengths() {
+        final Map<String, Long> result = new HashMap<>();
+        for (OutputStream os : mLogFileStreams) {
+            if (os instanceof MappedSegmentOutputStream mos) {
+                result.put(mos.getFile().getName(), mos.getPosition());
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Get the first existing staging folder
+     * @return Path of the root staging folder
+     */
+    private static Path getStagingRoot() {
+        for (String dir : STAGING_DIRS) {
+            if (dir != null && Files.isDirectory(Paths.get(dir))) return Paths.get(dir).resolve(STAGING_DIR_NAME);
+        }
+
+        return Paths.get(System.getProperty("java.io.tmpdir")).resolve(STAGING_DIR_NAME);
+    }
+
+    /**
+     * Put a marker in the queue for the writer thread
+     * @param marker TRIAL_END or BLOCK_END
+     */
+    private void enqueueMarker(int marker) {
+        if (mWriterThread == null) return; // Nothing to flush
+
+        final long pos = mRing.claim();
+        if (pos < 0) return; // Dropped (counted in the ring)
+
+        mRing.slot(pos).file = marker;
+        mRing.publish(pos);
+    }
+
+    /**
+     * Put a record in the queue for the writer thread
+     * @param file Index of the log file
+     * @param genLog GeneralLog
+     * @param serializer Serializer of the specific log
+     * @param log The specific log
+     */
+    private void enqueue(int file, GeneralLog genLog, LogSerializer serializer, Object log) {
+        final long pos = mRing.claim();
+        if (pos < 0) return; // Dropped (counted in the ring)
+
+        final LogRing.Slot slot = mRing.slot(pos);
+        slot.file = file;
+        slot.task = genLog.task;
+        slot.technique = genLog.technique;
+        slot.block_num = genLog.block_num;
+        slot.trial_num = genLog.trial_num;
+        slot.line.setLength(0);
+        genLog.appendTo(slot.line).append(SP);
+        serializer.append(slot.line, log);
+
+        mRing.publish(pos);
+    }
+
+    /**
+     * Hand the buffered actions to the writer thread (called with mActionLock)
+     */
+    private void flushActions() {
+        if (mActionBuffer.size() == 0 || mWriterThread == null) return;
+
+        final long pos = mRing.claim();
+        if (pos < 0) { // Dropped (counted in the ring)
+            mActionBuffer.clear();
+            return;
+        }
+
+        mRing.slot(pos).file = ACTIONS;
+        mRing.slot(pos).actions = mActionBuffer;
+        mRing.publish(pos);
+
+        // Continue with a free buffer
+        final ActionBuffer free = mFreeActionBuffers.poll();
+        mActionBuffer = (free != null) ? free : new ActionBuffer();
+    }
+
+    /**
+     * Get the PrintWriter of a log file
+     * @param file Index of the log file
+     * @return PrintWriter
+     */
+    private PrintWriter getFilePW(int file) {
+        return switch (file) {
+            case TRIALS -> mTrialLogFilePW;
+            case INSTANTS -> mInstantLogFilePW;
+            case TIMES -> mTimeLogFilePW;
+            case ACTIONS -> mActionLogFilePW;
+            default -> null;
+        };
+    }
+
+    /**
+     * Start the writer thread
+     */
+    private void startWriter() {
+        mClosing = false;
+        mWriterThread = new Thread(new WriterRunnable(), "LogWriter-" + mPcLogId);
+        mWriterThread.setDaemon(true);
+        mWriterThread.start();
+    }
+
+    /**
+     * Stop the writer thread after it has written all the queued records
+     */
+    private void stopWriter() {
+        if (mWriterThread == null) return;
+
+        mClosing = true;
+        try {
+            mWriterThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        mWriterThread = null;
     }
 
     /**
@@ -238,7 +901,7 @@ public class Logger {
      * @return Concated log headers (with SP in between)
      */
     private String getLogHeaders(Class<?> cl1, Class<?> cl2) {
-        return Utils.classPropsNames(cl1) + SP + Utils.classPropsNames(cl2);
+        return LogSerializer.of(cl1).getHeader() + SP + LogSerializer.of(cl2).getHeader();
     }
 
 }
@@ -0,0 +1,119 @@
+package log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * OutputStream that appends to a file through pre-allocated memory-mapped segments
+ * Writing is a memory copy. When a segment is full, the next one is mapped after it.
+ * On close, the file is truncated to the written length (removes the unused part of the last segment).
+ * For text logs only (trailing NULs of a file not properly closed are treated as unused space)
+ */
+public class MappedSegmentOutputStream extends OutputStream {
+    private final static String NAME = "MappedSegmentOutputStream/";
+
+    private final File mFile;
+    private final FileChannel mChannel;
+    private final int mSegmentSize;
+
+    private MappedByteBuffer mSegment;
+    private long mSegmentStart; // Position of the current segment in the file
+
+    // -------------------------------------------------------------------------------------------
+
+    /**
+     * Open (append) the file
+     * @param file File
+     * @param segmentSize Size of each mapped segment (bytes)
+     * @throws IOException If can't open/map the file
+     */
+    public MappedSegmentOutputStream(File file, int segmentSize) throws IOException {
+        mFile = file;
+        mChannel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        mSegmentSize = segmentSize;
+
+        mapSegment(findEnd());
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (!mSegment.hasRemaining()) nextSegment();
+        mSegment.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (!mSegment.hasRemaining()) nextSegment();
+
+            final int n = Math.min(len, mSegment.remaining());
+            mSegment.put(b, off, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Get the written length of the file
+     * @return Length (bytes)
+     */
+    public long getPosition() {
+        return mSegmentStart + mSegment.position();
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+
+    /**
+     * Write the mapped pages to the disk
+     */
+    public void force() {
+        mSegment.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!mChannel.isOpen()) return;
+
+        final long length = getPosition();
+        mSegment.force();
+        mSegment = null;
+
+        mChannel.truncate(length);
+        mChannel.close();
+    }
+
+    private void nextSegment() throws IOException {
+        mapSegment(mSegmentStart + mSegment.position());
+    }
+
+    private void mapSegment(long start) throws IOException {
+        mSegmentStart = start;
+        mSegment = mChannel.map(FileChannel.MapMode.READ_WRITE, start, mSegmentSize); // Extends the file
+    }
+
+    /**
+     * Find the end of the written data (skips the unused, zeroed part left by a file not closed)
+     * @return Position
+     * @throws IOException If can't read the file
+     */
+    private long findEnd() throws IOException {
+        long end = mChannel.size();
+        if (end == 0) return 0;
+
+        final MappedByteBuffer tail = mChannel.map(
+                FileChannel.MapMode.READ_ONLY,
+                Math.max(0, end - mSegmentSize),
+                Math.min(end, mSegmentSize));
+        int ind = tail.limit();
+        while (ind > 0 && tail.get(ind - 1) == 0) ind--;
+
+        return end - (tail.limit() - ind);
+    }
+}
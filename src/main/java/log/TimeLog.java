@@ -1,9 +1,5 @@
 package log;
 
-import java.lang.reflect.Field;
-
-import static tools.Consts.STRINGS.SP;
-
 public class TimeLog {
     public int trial_time;     // From trial_show to hit/miss
     public int block_time;     // From first trial_show to the last release in the block
@@ -16,16 +12,6 @@ public class TimeLog {
 
     @Override
     public String toString() {
-        final Field[] fields = getClass().getDeclaredFields();
-        StringBuilder sb = new StringBuilder();
-        try {
-            for (Field field : fields) {
-                sb.append(field.get(this)).append(SP);
-            }
-        } catch (IllegalAccessException e) {
-            throw new RuntimeException(e);
-        }
-
-        return sb.deleteCharAt(sb.length() - 1).toString();
+        return LogSerializer.of(TimeLog.class).toString(this);
     }
 }
@@ -3,9 +3,6 @@ package log;
 import experiment.Trial;
 
 import java.awt.*;
-import java.lang.reflect.Field;
-
-import static tools.Consts.STRINGS.SP;
 
 public class TrialLog {
 //    public Trial trial;
@@ -42,6 +39,9 @@ public class TrialLog {
     public int result;              //1 (Hit) or 0 (Miss)
     public double accuracy;         // {Tunnel}
 
+    public double rtt;              // PC-Moose round-trip time at the trial end (ms, smoothed) (-1 if unknown)
+    public double clock_offset;     // Moose clock - PC clock at the trial end (ms, smoothed)
+
     public void logGrabPoint(Point grP) {
         grab_x = grP.x;
         grab_y = grP.y;
@@ -59,16 +59,6 @@ public class TrialLog {
 
     @Override
     public String toString() {
-        final Field[] fields = getClass().getDeclaredFields();
-        StringBuilder sb = new StringBuilder();
-        try {
-            for (Field field : fields) {
-                sb.append(field.get(this)).append(SP);
-            }
-        } catch (IllegalAccessException e) {
-            throw new RuntimeException(e);
-        }
-
-        return sb.deleteCharAt(sb.length() - 1).toString();
+        return LogSerializer.of(TrialLog.class).toString(this);
     }
 }
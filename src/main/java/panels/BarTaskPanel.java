@@ -91,7 +91,7 @@ public class BarTaskPanel extends TaskPanel implements MouseMotionListener, Mous
         mTrial = (BarTrial) mBlock.getTrial(trNum);
 
 //        mTrialLog.trial = mTrial.clone(); // LOG
-        mGenLog.trialStr = mTrial.toString(); // LOG
+        mGenLog.trialStr = mBlock.getTrialStr(trNum); // LOG (made with the block)
         sendGenLog(); // LOG
 
         repaint();
@@ -126,9 +126,9 @@ public class BarTaskPanel extends TaskPanel implements MouseMotionListener, Mous
     }
 
     @Override
-    public void grab() {
+    public void grab(long eventTime, long receiveTime) {
         final String TAG = NAME + "grab";
-        super.grab();
+        super.grab(eventTime, receiveTime);
 
         Point curP = getCursorPos();
 
@@ -196,8 +196,8 @@ public class BarTaskPanel extends TaskPanel implements MouseMotionListener, Mous
     }
 
     @Override
-    public void release() {
-        super.release();
+    public void release(long eventTime, long receiveTime) {
+        super.release(eventTime, receiveTime);
 
         final Point curP = getCursorPos();
 
@@ -217,8 +217,8 @@ public class BarTaskPanel extends TaskPanel implements MouseMotionListener, Mous
     }
 
     @Override
-    protected void revert() {
-        super.revert();
+    protected void revert(long eventTime, long receiveTime) {
+        super.revert(eventTime, receiveTime);
 
         final Point curP = getCursorPos();
 
@@ -299,7 +299,8 @@ public class BarTaskPanel extends TaskPanel implements MouseMotionListener, Mous
     public void mousePressed(MouseEvent e) {
         if (mMouseEnabled) {
             if (e.getButton() == MouseEvent.BUTTON1) {
-                grab();
+                final long now = Utils.nowMillis(); // Mouse: handled as it happens
+                grab(now, now);
             }
         }
     }
@@ -308,7 +309,8 @@ public class BarTaskPanel extends TaskPanel implements MouseMotionListener, Mous
     public void mouseReleased(MouseEvent e) {
         if (mMouseEnabled) {
             if (e.getButton() == MouseEvent.BUTTON1) {
-                release();
+                final long now = Utils.nowMillis();
+                release(now, now);
             }
         }
     }
@@ -92,7 +92,7 @@ public class BoxTaskPanel extends TaskPanel implements MouseMotionListener, Mous
         mTrial = (BoxTrial) mBlock.getTrial(trNum);
 
 //        mTrialLog.trial = mTrial.clone();
-        mGenLog.trialStr = mTrial.toString(); // LOG
+        mGenLog.trialStr = mBlock.getTrialStr(trNum); // LOG (made with the block)
         sendGenLog(); // LOG
 
         repaint();
@@ -128,8 +128,8 @@ public class BoxTaskPanel extends TaskPanel implements MouseMotionListener, Mous
     }
 
     @Override
-    public void grab() {
-        super.grab();   // grab Instant logging done in the superclass
+    public void grab(long eventTime, long receiveTime) {
+        super.grab(eventTime, receiveTime);   // grab Instant logging done in the superclass
 
         final Point curP = getCursorPos();
 
@@ -203,9 +203,9 @@ public class BoxTaskPanel extends TaskPanel implements MouseMotionListener, Mous
     }
 
     @Override
-    public void release() {
+    public void release(long eventTime, long receiveTime) {
         final String TAG = NAME + "release";
-        super.release(); // always logs release
+        super.release(eventTime, receiveTime); // always logs release
 
         final Point curP = getCursorPos();
 
@@ -225,8 +225,8 @@ public class BoxTaskPanel extends TaskPanel implements MouseMotionListener, Mous
     }
 
     @Override
-    protected void revert() {
-        super.revert(); // always logs revert
+    protected void revert(long eventTime, long receiveTime) {
+        super.revert(eventTime, receiveTime); // always logs revert
 
         final Point curP = getCursorPos();
 
@@ -346,7 +346,8 @@ public class BoxTaskPanel extends TaskPanel implements MouseMotionListener, Mous
     public void mousePressed(MouseEvent e) {
         if (mMouseEnabled) {
             if (mTrialActive && e.getButton() == MouseEvent.BUTTON1) {
-                grab();
+                final long now = Utils.nowMillis(); // Mouse: handled as it happens
+                grab(now, now);
             }
         }
     }
@@ -355,7 +356,8 @@ public class BoxTaskPanel extends TaskPanel implements MouseMotionListener, Mous
     public void mouseReleased(MouseEvent e) {
         if (mMouseEnabled) {
             if (mTrialActive && e.getButton() == MouseEvent.BUTTON1) {
-                release();
+                final long now = Utils.nowMillis();
+                release(now, now);
             }
         }
     }
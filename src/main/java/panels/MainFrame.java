@@ -1,7 +1,12 @@
 package panels;
 
 import log.Logger;
+import control.GestureQueue;
+import control.MooseListener;
+import control.OutboundQueue;
 import control.Server;
+import control.Telemetry;
+import control.WireRecorder;
 import experiment.Experiment;
 import tools.JLog;
 import tools.Memo;
@@ -11,11 +16,13 @@ import tools.Utils;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.util.ArrayList;
+import java.util.List;
 
 import static experiment.Experiment.*;
 import static tools.Consts.*;
 
-public class MainFrame extends JFrame implements MouseListener {
+public class MainFrame extends JFrame implements MouseListener, MooseListener {
     private final static String NAME = "MainFrame/";
 
     private static MainFrame self; // Singelton instance
@@ -40,6 +47,17 @@ public class MainFrame extends JFrame implements MouseListener {
     public TASK mActiveTask = TASK.PEEK;
 
     public final int NUM_BLOCKS = 5;
+
+    public final Logger.FORMAT ACTIONS_LOG_FORMAT = Logger.FORMAT.TEXT;
+    public final Logger.SINK HIGH_RATE_LOG_SINK = Logger.SINK.STREAM;
+    public final Logger.FLUSH_POLICY LOG_FLUSH_POLICY = Logger.FLUSH_POLICY.GROUP_COMMIT;
+    public final boolean LOG_FORCE = false; // Force the logs to the disk on each flush
+    public final boolean LOG_COMPRESSED = false; // Deflate frame per block (*.txt.z)
+    public final boolean LOG_STAGED = false; // Write to /dev/shm (or tmp) first, copy to the log folder per block
+    public final boolean MOOSE_UDP = false; // Touch samples (DRAG&MOVE) over UDP (for continuous techniques)
+    public final OutboundQueue.FULL_POLICY OUT_QUEUE_POLICY = OutboundQueue.FULL_POLICY.DROP_OLDEST; // Stalled Moose
+    public final boolean TELEMETRY = false; // Session summaries to the observer clients (every second)
+    public final boolean RECORD_WIRE = false; // Capture the Moose traffic in the log folder (replay with WireReplayer)
     // !!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!
 
     /**
@@ -58,7 +76,9 @@ public class MainFrame extends JFrame implements MouseListener {
             @Override
             public void windowClosing(WindowEvent e) {
                 super.windowClosing(e);
+                Telemetry.get().stop();
                 Server.get().close();
+                Logger.get().closeLogs(); // Writes the remaining (queued/buffered) logs
             }
         });
 
@@ -78,10 +98,21 @@ public class MainFrame extends JFrame implements MouseListener {
      * Start the frame
      */
     public void start() {
+        Logger.get().setActionsFormat(ACTIONS_LOG_FORMAT);
+        Logger.get().setHighRateSink(HIGH_RATE_LOG_SINK);
+        Logger.get().setFlushPolicy(LOG_FLUSH_POLICY, LOG_FORCE);
+        Logger.get().setCompressed(LOG_COMPRESSED);
+        Logger.get().setStaged(LOG_STAGED);
+        Server.get().setListener(new GestureQueue(this)); // Moose actions on the EDT
+        Server.get().setUdpEnabled(MOOSE_UDP);
+        Server.get().setOutQueuePolicy(OUT_QUEUE_POLICY);
+        if (TELEMETRY) Telemetry.get().start();
+
         switch (mMode) {
             case DEMO -> {
                 // Create log files
                 Logger.get().initLog("DEMO-" + PID);
+                recordWire("DEMO-" + PID);
 
                 startDemo();
             }
@@ -89,6 +120,7 @@ public class MainFrame extends JFrame implements MouseListener {
             case PRACTICE -> {
                 // Create log files
                 Logger.get().initLog("P" + PID + "-PRACTICE");
+                recordWire("P" + PID + "-PRACTICE");
 
                 startPractice();
             }
@@ -96,6 +128,7 @@ public class MainFrame extends JFrame implements MouseListener {
             case TEST -> {
                 // Create log files
                 Logger.get().initLog("P" + PID);
+                recordWire("P" + PID);
 
                 startTask();
             }
@@ -103,6 +136,16 @@ public class MainFrame extends JFrame implements MouseListener {
 
     }
 
+    /**
+     * Start capturing the Moose traffic (if RECORD_WIRE)
+     * @param logId Log id of the participant
+     */
+    private void recordWire(String logId) {
+        if (!RECORD_WIRE) return;
+        final String fileName = logId + "_" + Utils.nowDateTime() + "_WIRE" + WireRecorder.EXTENSION;
+        Server.get().startRecording(Logger.get().getPcLogDirectory().resolve(fileName));
+    }
+
     /**
      * Start the demo
      */
@@ -247,17 +290,46 @@ public class MainFrame extends JFrame implements MouseListener {
         );
     }
 
-    // Moose actions (called from outside) ----------------------------------------------------------------
-    public void grab() {
-        if (mActivePanel != null) mActivePanel.grab();
+    // Moose actions (called from outside, on the EDT) ----------------------------------------------------------------
+    @Override
+    public List<Memo> getStateMemos() {
+        final List<Memo> result = new ArrayList<>();
+
+        // Set the active technique/pId
+        result.add(new Memo(STRINGS.CONFIG, STRINGS.TECH, mActiveTechnique));
+
+        // Send the exp_id
+        if (mMode.equals(MODE.TEST)) {
+            result.add(new Memo(STRINGS.LOG, STRINGS.EXP_ID, Logger.get().getLogId()));
+        } else if (mMode.equals(MODE.PRACTICE)) {
+            result.add(new Memo(STRINGS.LOG, STRINGS.EXP_ID, Logger.get().getPracticeLogId()));
+        }
+
+        return result;
     }
 
-    public void release() {
-        if (mActivePanel != null) mActivePanel.release();
+    @Override
+    public void grab(int clientId, long eventTime, long receiveTime) {
+        if (mActivePanel != null) {
+            Telemetry.get().inputHandled(eventTime);
+            mActivePanel.grab(eventTime, receiveTime);
+        }
     }
 
-    public void revert() {
-        if (mActivePanel != null) mActivePanel.revert();
+    @Override
+    public void release(int clientId, long eventTime, long receiveTime) {
+        if (mActivePanel != null) {
+            Telemetry.get().inputHandled(eventTime);
+            mActivePanel.release(eventTime, receiveTime);
+        }
+    }
+
+    @Override
+    public void revert(int clientId, long eventTime, long receiveTime) {
+        if (mActivePanel != null) {
+            Telemetry.get().inputHandled(eventTime);
+            mActivePanel.revert(eventTime, receiveTime);
+        }
     }
 
 
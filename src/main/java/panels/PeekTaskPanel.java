@@ -105,7 +105,7 @@ public class PeekTaskPanel extends TaskPanel implements MouseMotionListener, Mou
         mTrial = (PeekTrial) mBlock.getTrial(trNum);
 
 //        mTrialLog.trial = mTrial.clone(); // LOG
-        mGenLog.trialStr = mTrial.toString(); // LOG
+        mGenLog.trialStr = mBlock.getTrialStr(trNum); // LOG (made with the block)
         sendGenLog(); // LOG
 
         repaint();
@@ -142,9 +142,9 @@ public class PeekTaskPanel extends TaskPanel implements MouseMotionListener, Mou
     }
 
     @Override
-    public void grab() {
+    public void grab(long eventTime, long receiveTime) {
         final String TAG = NAME + "grab";
-        super.grab();
+        super.grab(eventTime, receiveTime);
 
         Point curP = getCursorPos();
 
@@ -236,9 +236,9 @@ public class PeekTaskPanel extends TaskPanel implements MouseMotionListener, Mou
     }
 
     @Override
-    public void release() {
+    public void release(long eventTime, long receiveTime) {
         final String TAG = NAME + "release";
-        super.release(); // always logs release
+        super.release(eventTime, receiveTime); // always logs release
 
         final Point curP = getCursorPos();
 
@@ -261,9 +261,9 @@ public class PeekTaskPanel extends TaskPanel implements MouseMotionListener, Mou
     }
 
     @Override
-    protected void revert() {
+    protected void revert(long eventTime, long receiveTime) {
         final String TAG = NAME + "revert";
-        super.revert(); // always logs revert
+        super.revert(eventTime, receiveTime); // always logs revert
 
         final Point curP = getCursorPos();
 
@@ -372,7 +372,8 @@ public class PeekTaskPanel extends TaskPanel implements MouseMotionListener, Mou
     public void mousePressed(MouseEvent e) {
         if (mMouseEnabled) {
             if (mTrialActive && e.getButton() == MouseEvent.BUTTON1) {
-                grab();
+                final long now = Utils.nowMillis(); // Mouse: handled as it happens
+                grab(now, now);
             }
         }
     }
@@ -381,7 +382,8 @@ public class PeekTaskPanel extends TaskPanel implements MouseMotionListener, Mou
     public void mouseReleased(MouseEvent e) {
         if (mMouseEnabled) {
             if (mTrialActive && e.getButton() == MouseEvent.BUTTON1) {
-                release();
+                final long now = Utils.nowMillis();
+                release(now, now);
             }
         }
     }
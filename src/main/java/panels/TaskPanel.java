@@ -1,8 +1,8 @@
 package panels;
 
-import com.google.gson.Gson;
 import log.Logger;
 import control.Server;
+import control.Telemetry;
 import dialogs.PracticeBreakDialog;
 import experiment.Block;
 import experiment.Experiment;
@@ -71,7 +71,6 @@ public class TaskPanel extends JLayeredPane {
     protected long mBlockStartTime;
     protected long mTaskStartTime;
 
-    protected Gson mGson = new Gson();
 
     // Actions ------------------------------------------------------------------------------------
     protected final Action NEXT_TRIAL = new AbstractAction() {
@@ -113,6 +112,7 @@ public class TaskPanel extends JLayeredPane {
         // Try to find positions for all the trials in the block
         if (findAllTrialsPosition(1) == 0) {
             mBlock.positionAllTrialsElements();
+            mBlock.prepareGenLogs(mGenLog.task, mGenLog.technique); // LOG
             Out.d(TAG, "Showing the trials");
             mBlockStartTime = Utils.nowMillis();
             showTrial(1);
@@ -129,6 +129,7 @@ public class TaskPanel extends JLayeredPane {
         mInstantLog.logTrialShow();
 
         mTrialStartTime = Utils.nowMillis();
+        Telemetry.get().trialShown(mBlockNum, trNum);
         //endregion
     }
 
@@ -148,8 +149,13 @@ public class TaskPanel extends JLayeredPane {
         //endregion
     }
 
-    protected void grab() {
-        mInstantLog.logGrab(); // LOG
+    /**
+     * Grab (Moose or mouse)
+     * @param eventTime When it happened (PC clock, ms; mouse => now)
+     * @param receiveTime When the PC received it (ms; mouse => now)
+     */
+    protected void grab(long eventTime, long receiveTime) {
+        mInstantLog.logGrab(eventTime, receiveTime); // LOG
     }
 
     protected void drag() {
@@ -159,12 +165,12 @@ public class TaskPanel extends JLayeredPane {
         //endregion
     }
 
-    protected void release() {
-        mInstantLog.logRelease(); // LOG
+    protected void release(long eventTime, long receiveTime) {
+        mInstantLog.logRelease(eventTime, receiveTime); // LOG
     }
 
-    protected void revert() {
-        mInstantLog.logRevert(); // LOG
+    protected void revert(long eventTime, long receiveTime) {
+        mInstantLog.logRevert(eventTime, receiveTime); // LOG
     }
 
     protected void startError() {
@@ -277,7 +283,7 @@ public class TaskPanel extends JLayeredPane {
 
     protected void sendGenLog() {
         if (!mPracticeMode && !mDemoMode) {
-            final String genLogJSON = mGson.toJson(mGenLog, GeneralLog.class);
+            final String genLogJSON = mBlock.getGenLogJson(mBlockNum, mTrialNum);
             Server.get().send(new Memo(STRINGS.LOG, STRINGS.GENLOG, genLogJSON));
             Out.d(NAME, genLogJSON);
         }
@@ -294,10 +300,15 @@ public class TaskPanel extends JLayeredPane {
         mTrialLog.total_time = mInstantLog.getTotalTime();
 
         mTimeLog.trial_time = (int) (Utils.nowMillis() - mTrialStartTime);
+        Telemetry.get().trialEnded(mTrialLog.result == 1, mTimeLog.trial_time);
+
+        mTrialLog.rtt = Server.get().getRtt_ms();
+        mTrialLog.clock_offset = Server.get().getClockOffset_ms();
 
         Logger.get().logInstant(mGenLog, mInstantLog);
         Logger.get().logTrial(mGenLog, mTrialLog);
         Logger.get().logTime(mGenLog, mTimeLog);
+        Logger.get().endTrial();
 
         mTimeLog.trial_time = 0;
         mTimeLog.homing_time = 0;
@@ -306,6 +317,7 @@ public class TaskPanel extends JLayeredPane {
     protected void logBlockEnd() {
         mTimeLog.block_time = (int) (Utils.nowMillis() - mBlockStartTime);
         Logger.get().logTime(mGenLog, mTimeLog);
+        Logger.get().endBlock();
 
         mTimeLog.block_time = 0;
     }
@@ -317,6 +329,12 @@ public class TaskPanel extends JLayeredPane {
         mTimeLog.task_time = 0;
     }
 
+    @Override
+    public void paint(Graphics g) {
+        super.paint(g);
+        Telemetry.get().rendered();
+    }
+
     protected Dimension getDispDim() {
         Dimension result = new Dimension();
         result.width = getWidth() - (2 * Utils.mm2px(LR_MARGIN_mm));
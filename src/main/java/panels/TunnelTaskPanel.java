@@ -158,7 +158,7 @@ public class TunnelTaskPanel extends TaskPanel implements MouseMotionListener, M
 //        Out.d(TAG, mTrial);
 
 //        mTrialLog.trial = mTrial.clone(); // LOG
-        mGenLog.trialStr = mTrial.toString(); // LOG
+        mGenLog.trialStr = mBlock.getTrialStr(mTrialNum); // LOG (made with the block)
         sendGenLog(); // LOG
 
         repaint();
@@ -179,8 +179,8 @@ public class TunnelTaskPanel extends TaskPanel implements MouseMotionListener, M
     }
 
     @Override
-    public void grab() {
-        super.grab();
+    public void grab(long eventTime, long receiveTime) {
+        super.grab(eventTime, receiveTime);
 
         Point curP = getCursorPos();
 
@@ -245,8 +245,8 @@ public class TunnelTaskPanel extends TaskPanel implements MouseMotionListener, M
     }
 
     @Override
-    public void release() {
-        super.release();
+    public void release(long eventTime, long receiveTime) {
+        super.release(eventTime, receiveTime);
 
         final Point curP = getCursorPos();
 
@@ -276,8 +276,8 @@ public class TunnelTaskPanel extends TaskPanel implements MouseMotionListener, M
     }
 
     @Override
-    protected void revert() {
-        super.revert();
+    protected void revert(long eventTime, long receiveTime) {
+        super.revert(eventTime, receiveTime);
 
         final Point curP = getCursorPos();
 
@@ -512,7 +512,8 @@ public class TunnelTaskPanel extends TaskPanel implements MouseMotionListener, M
     public void mousePressed(MouseEvent e) {
         if (mMouseEnabled) {
             if (mTrialActive && e.getButton() == MouseEvent.BUTTON1) { // Do nothing on the other button press
-                grab();
+                final long now = Utils.nowMillis(); // Mouse: handled as it happens
+                grab(now, now);
             }
         }
     }
@@ -521,7 +522,8 @@ public class TunnelTaskPanel extends TaskPanel implements MouseMotionListener, M
     public void mouseReleased(MouseEvent e) {
         if (mMouseEnabled) {
             if (mTrialActive && e.getButton() == MouseEvent.BUTTON1) {
-                release();
+                final long now = Utils.nowMillis();
+                release(now, now);
             }
         }
     }
@@ -316,12 +316,19 @@ public class Consts {
         public final static String TRIAL = "TRIAL";
         public final static String TSK = "TASK"; // TSK to not confuse with TASK
         public final static String END = "END";
+        public final static String PROTOCOL = "PROTOCOL"; // Handshake for the binary Memos
+        public final static String PING = "PING"; // Clock sync (PC > Moose)
+        public final static String PONG = "PONG"; // Clock sync (Moose > PC)
+        public final static String UDP = "UDP"; // Port and id for the touch samples over UDP
+        public final static String TELEMETRY = "TELEMETRY"; // Session summaries (to the observers)
+        public final static String SUMMARY = "SUMMARY";
         public final static String P_INIT = "P";
 
         public final static String GRAB = "GRAB";
         public final static String DRAG = "DRAG";
         public final static String RELEASE = "RELEASE";
         public final static String REVERT = "REVERT";
+        public final static String MOVE = "MOVE"; // Finger delta (dX, dY)
 
         public final static String DEMO_TITLE = "Welcome to the scrolling experiment!";
         public final static String DEMO_NEXT = "First, let's have a demo >";
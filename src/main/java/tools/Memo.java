@@ -10,6 +10,10 @@ public class Memo {
     private String value1 = "-";
     private String value2 = "-";
 
+    // Values as given (typed, for the binary form)
+    private Object rawValue1;
+    private Object rawValue2;
+
     /**
      * More general constructor
      * @param act Action
@@ -19,8 +23,14 @@ public class Memo {
     public Memo(String act, String md, Object... values) {
         action = act;
         mode = md;
-        if (values.length == 1) value1 = String.valueOf(values[0]);
-        if (values.length == 2) value2 = String.valueOf(values[1]);
+        if (values.length >= 1) {
+            value1 = String.valueOf(values[0]);
+            rawValue1 = values[0];
+        }
+        if (values.length >= 2) {
+            value2 = String.valueOf(values[1]);
+            rawValue2 = values[1];
+        }
     }
 
     /**
@@ -60,12 +70,24 @@ public class Memo {
         else return "";
     }
 
+    /**
+     * Get one of the values as given (or decoded from the binary form)
+     * @param valInd Index of the value
+     * @return Object (null if only the String is set)
+     */
+    public Object getRawValue(int valInd) {
+        if (valInd == 1) return rawValue1;
+        if (valInd == 2) return rawValue2;
+        else return null;
+    }
+
     /**
      * Get one of the values in Double
      * @param valInd Index of the value
      * @return Double
      */
     public Double getDblValue(int valInd) {
+        if (getRawValue(valInd) instanceof Number n) return n.doubleValue();
         if (valInd == 1) return Double.parseDouble(value1);
         if (valInd == 2) return Double.parseDouble(value2);
         else return 0.0;
@@ -77,11 +99,37 @@ public class Memo {
      * @return Int
      */
     public int getIntValue(int valInd) {
+        if (getRawValue(valInd) instanceof Integer i) return i;
         if (valInd == 1) return Integer.parseInt(value1);
         if (valInd == 2) return Integer.parseInt(value2);
         else return 0;
     }
 
+    void setAction(String act) {
+        action = act;
+    }
+
+    void setMode(String md) {
+        mode = md;
+    }
+
+    /**
+     * Set one of the values (decoded from the binary form)
+     * @param valInd Index of the value
+     * @param value Object (null => no value)
+     */
+    void setValue(int valInd, Object value) {
+        final String str = (value == null) ? "-" : String.valueOf(value);
+        if (valInd == 1) {
+            value1 = str;
+            rawValue1 = value;
+        }
+        if (valInd == 2) {
+            value2 = str;
+            rawValue2 = value;
+        }
+    }
+
     /**
      * Get the Memo from String
      * @param mssg String
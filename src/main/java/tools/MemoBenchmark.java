@@ -0,0 +1,111 @@
+package tools;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+import static tools.Consts.STRINGS.*;
+
+/**
+ * Microbenchmark: Memo.valueOf (split) + String dispatch vs. MemoTokenizer + enum dispatch
+ * Both start from the received bytes of a line. Prints the time and the allocated bytes per Memo
+ */
+public class MemoBenchmark {
+    private final static String NAME = "MemoBenchmark/";
+
+    private static final String[] LINES = {
+            "DRAG&GRAB&-&-",
+            "DRAG&RELEASE&1697040000123&-",
+            "DRAG&REVERT&-&-",
+            "CONNECTION&INTRO&-&-",
+            "LOG&BLOCK&5&2.75"
+    };
+
+    private static final int N_ROUNDS = 5;
+    private static final int N_MEMOS = 2_000_000;
+
+    private static long sink; // Results (so nothing is optimized away)
+
+    /**
+     * Run the benchmark
+     * @param args (not used)
+     */
+    public static void main(String[] args) {
+        final byte[][] lines = new byte[LINES.length][];
+        for (int li = 0; li < LINES.length; li++) lines[li] = LINES[li].getBytes(StandardCharsets.UTF_8);
+
+        final MemoTokenizer tokenizer = new MemoTokenizer();
+        for (int ri = 0; ri < N_ROUNDS; ri++) {
+            measure("split ", () -> {
+                for (int mi = 0; mi < N_MEMOS; mi++) {
+                    final byte[] line = lines[mi % lines.length];
+                    sink += dispatch(Memo.valueOf(new String(line, StandardCharsets.UTF_8)));
+                }
+            });
+
+            measure("tokens", () -> {
+                for (int mi = 0; mi < N_MEMOS; mi++) {
+                    final byte[] line = lines[mi % lines.length];
+                    tokenizer.tokenize(line, 0, line.length);
+                    sink += dispatch(tokenizer);
+                }
+            });
+        }
+
+        System.out.println("(" + sink + ")");
+    }
+
+    /**
+     * Dispatch as Server did before (String comparisons)
+     */
+    private static long dispatch(Memo memo) {
+        if (memo.getAction().equals(DRAG)) {
+            switch (memo.getMode()) {
+                case GRAB -> { return 1; }
+                case RELEASE -> { return Long.parseLong(memo.getStrValue(1)); }
+                case REVERT -> { return 3; }
+            }
+        }
+        if (memo.getAction().equals(CONNECTION) && memo.getMode().equals(INTRO)) return 4;
+        if (memo.getAction().equals(LOG)) return (long) (memo.getIntValue(1) + memo.getDblValue(2));
+
+        return 0;
+    }
+
+    /**
+     * Dispatch with the enums
+     */
+    private static long dispatch(MemoTokenizer memo) {
+        switch (memo.getAction()) {
+            case DRAG -> {
+                switch (memo.getMode()) {
+                    case GRAB -> { return 1; }
+                    case RELEASE -> { return memo.getLongValue(1); }
+                    case REVERT -> { return 3; }
+                }
+            }
+            case CONNECTION -> {
+                if (memo.getMode() == MemoTokenizer.MODE.INTRO) return 4;
+            }
+            case LOG -> {
+                return (long) (memo.getIntValue(1) + memo.getDblValue(2));
+            }
+        }
+
+        return 0;
+    }
+
+    private static void measure(String label, Runnable run) {
+        final com.sun.management.ThreadMXBean mxBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+
+        final long startBytes = mxBean.getThreadAllocatedBytes(threadId);
+        final long startTime = System.nanoTime();
+        run.run();
+        final long time = System.nanoTime() - startTime;
+        final long bytes = mxBean.getThreadAllocatedBytes(threadId) - startBytes;
+
+        System.out.printf("%s: %6.1f ns/memo, %6.1f bytes/memo%n",
+                label, time / (double) N_MEMOS, bytes / (double) N_MEMOS);
+    }
+}
@@ -0,0 +1,132 @@
+package tools;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary form of Memo (used after the PROTOCOL handshake; older Moose builds keep the text form)
+ * Frame: length (unsigned short, excluding itself), action (byte), mode (byte), value1, value2
+ * action/mode: opcode (MemoTokenizer.ACTION/MODE ordinal + 1) or 0 followed by a STRING
+ * value: type (byte) + payload => NONE, INT (4 bytes), LONG (8), DOUBLE (8), STRING (unsigned short + UTF-8)
+ */
+public class MemoCodec {
+    private final static String NAME = "MemoCodec/";
+
+    public static final int VERSION = 1; // Highest binary protocol version supported (0 = text)
+    public static final int MAX_FRAME_LENGTH = 0xFFFF;
+
+    private static final byte OP_STRING = 0;
+
+    // Value types
+    private static final byte NONE = MemoTokenizer.NONE;
+    private static final byte INT = MemoTokenizer.INT;
+    private static final byte LONG = MemoTokenizer.LONG;
+    private static final byte DOUBLE = MemoTokenizer.DOUBLE;
+    private static final byte STRING = MemoTokenizer.STRING;
+
+    private static final String NO_VALUE = "-";
+
+    // -------------------------------------------------------------------------------------------
+
+    /**
+     * Encode a Memo into a frame
+     * @param memo Memo
+     * @return Bytes of the frame (with the length)
+     */
+    public static byte[] encode(Memo memo) {
+        final ByteBuffer bb = ByteBuffer.allocate(2 + frameLength(memo));
+        bb.putShort((short) (bb.capacity() - 2));
+
+        final MemoTokenizer.ACTION action = MemoTokenizer.ACTION.of(memo.getAction());
+        final MemoTokenizer.MODE mode = MemoTokenizer.MODE.of(memo.getMode());
+        putOp(bb, action != MemoTokenizer.ACTION.UNKNOWN, action.ordinal(), memo.getAction());
+        putOp(bb, mode != MemoTokenizer.MODE.UNKNOWN, mode.ordinal(), memo.getMode());
+        putValue(bb, memo.getRawValue(1), memo.getStrValue(1));
+        putValue(bb, memo.getRawValue(2), memo.getStrValue(2));
+
+        return bb.array();
+    }
+
+    /**
+     * Decode a frame
+     * @param frame ByteBuffer positioned after the length, limited to the end of the frame
+     * @return Memo
+     * @throws IllegalArgumentException If the frame is malformed
+     */
+    public static Memo decode(ByteBuffer frame) {
+        final MemoTokenizer tokenizer = new MemoTokenizer();
+        if (!tokenizer.tokenizeFrame(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining())) {
+            throw new IllegalArgumentException("Malformed frame");
+        }
+
+        return tokenizer.toMemo();
+    }
+
+    /**
+     * Get the length of a frame (without the length field)
+     * @param memo Memo
+     * @return Length (bytes)
+     */
+    private static int frameLength(Memo memo) {
+        final int length =
+                opLength(MemoTokenizer.ACTION.of(memo.getAction()) != MemoTokenizer.ACTION.UNKNOWN, memo.getAction())
+                + opLength(MemoTokenizer.MODE.of(memo.getMode()) != MemoTokenizer.MODE.UNKNOWN, memo.getMode())
+                + valueLength(memo.getRawValue(1), memo.getStrValue(1))
+                + valueLength(memo.getRawValue(2), memo.getStrValue(2));
+
+        if (length > MAX_FRAME_LENGTH) throw new IllegalArgumentException("Memo too long: " + length);
+        return length;
+    }
+
+    private static int opLength(boolean known, String str) {
+        return known ? 1 : 1 + strLength(str);
+    }
+
+    /**
+     * Put the opcode of an action/mode (inline String if unknown)
+     * @param known Is a known action/mode
+     * @param ordinal Ordinal of the enum
+     */
+    private static void putOp(ByteBuffer bb, boolean known, int ordinal, String str) {
+        if (known) {
+            bb.put((byte) (ordinal + 1));
+        } else {
+            bb.put(OP_STRING);
+            putStr(bb, str);
+        }
+    }
+
+    private static int valueLength(Object raw, String str) {
+        if (raw instanceof Integer) return 1 + 4;
+        if (raw instanceof Long) return 1 + 8;
+        if (raw instanceof Double || raw instanceof Float) return 1 + 8;
+        if (NO_VALUE.equals(str)) return 1;
+
+        return 1 + strLength(str);
+    }
+
+    private static void putValue(ByteBuffer bb, Object raw, String str) {
+        if (raw instanceof Integer i) {
+            bb.put(INT).putInt(i);
+        } else if (raw instanceof Long l) {
+            bb.put(LONG).putLong(l);
+        } else if (raw instanceof Double || raw instanceof Float) {
+            bb.put(DOUBLE).putDouble(((Number) raw).doubleValue());
+        } else if (NO_VALUE.equals(str)) {
+            bb.put(NONE);
+        } else {
+            bb.put(STRING);
+            putStr(bb, str);
+        }
+    }
+
+    private static int strLength(String str) {
+        return 2 + str.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static void putStr(ByteBuffer bb, String str) {
+        final byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        bb.putShort((short) bytes.length);
+        bb.put(bytes);
+    }
+}
@@ -0,0 +1,435 @@
+package tools;
+
+import java.nio.charset.StandardCharsets;
+
+import static tools.Consts.STRINGS.MSP;
+
+/**
+ * Reusable reader of received Memos (text: action&mode&v1&v2, or a MemoCodec frame)
+ * Scans the bytes once: action/mode => enums, values => kept as ranges of the bytes and parsed into
+ * primitives on request. No Strings or arrays are created (except getStrValue)
+ */
+public class MemoTokenizer {
+    private final static String NAME = "MemoTokenizer/";
+
+    // Actions (the order is the MemoCodec opcode => only append)
+    public enum ACTION {
+        CONNECTION(Consts.STRINGS.CONNECTION),
+        CONFIG(Consts.STRINGS.CONFIG),
+        LOG(Consts.STRINGS.LOG),
+        DRAG(Consts.STRINGS.DRAG),
+        TELEMETRY(Consts.STRINGS.TELEMETRY),
+        UNKNOWN("");
+
+        private final String str;
+        private final byte[] bytes;
+
+        ACTION(String str) {
+            this.str = str;
+            bytes = str.getBytes(StandardCharsets.US_ASCII);
+        }
+
+        public String getStr() {
+            return str;
+        }
+
+        public static ACTION of(String str) {
+            for (ACTION action : values()) if (action != UNKNOWN && action.str.equals(str)) return action;
+            return UNKNOWN;
+        }
+    }
+
+    // Modes (the order is the MemoCodec opcode => only append)
+    public enum MODE {
+        INTRO(Consts.STRINGS.INTRO),
+        TECH(Consts.STRINGS.TECH),
+        EXP_ID(Consts.STRINGS.EXP_ID),
+        GENLOG(Consts.STRINGS.GENLOG),
+        END(Consts.STRINGS.END),
+        GRAB(Consts.STRINGS.GRAB),
+        RELEASE(Consts.STRINGS.RELEASE),
+        REVERT(Consts.STRINGS.REVERT),
+        PROTOCOL(Consts.STRINGS.PROTOCOL),
+        BLOCK(Consts.STRINGS.BLOCK),
+        TRIAL(Consts.STRINGS.TRIAL),
+        TSK(Consts.STRINGS.TSK),
+        PING(Consts.STRINGS.PING),
+        PONG(Consts.STRINGS.PONG),
+        UDP(Consts.STRINGS.UDP),
+        MOVE(Consts.STRINGS.MOVE),
+        SUMMARY(Consts.STRINGS.SUMMARY),
+        UNKNOWN("");
+
+        private final String str;
+        private final byte[] bytes;
+
+        MODE(String str) {
+            this.str = str;
+            bytes = str.getBytes(StandardCharsets.US_ASCII);
+        }
+
+        public String getStr() {
+            return str;
+        }
+
+        public static MODE of(String str) {
+            for (MODE mode : values()) if (mode != UNKNOWN && mode.str.equals(str)) return mode;
+            return UNKNOWN;
+        }
+    }
+
+    private static final ACTION[] ACTIONS = ACTION.values();
+    private static final MODE[] MODES = MODE.values();
+
+    private static final byte SEP = (byte) MSP.charAt(0);
+    private static final long[] POW10 = new long[19];
+    static {
+        POW10[0] = 1;
+        for (int pi = 1; pi < POW10.length; pi++) POW10[pi] = POW10[pi - 1] * 10;
+    }
+
+    // Value types
+    static final byte NONE = 0;
+    static final byte INT = 1;
+    static final byte LONG = 2;
+    static final byte DOUBLE = 3;
+    static final byte STRING = 4;
+
+    private byte[] mBytes;
+    private ACTION mAction;
+    private MODE mMode;
+    private String mActionStr, mModeStr; // Only for UNKNOWN (binary inline strings)
+
+    // Values (index 1 and 2 => 0 and 1)
+    private final byte[] mTypes = new byte[2];
+    private final long[] mLongs = new long[2];
+    private final double[] mDoubles = new double[2];
+    private final int[] mStarts = new int[2]; // Range in the bytes (STRING)
+    private final int[] mEnds = new int[2];
+
+    // -------------------------------------------------------------------------------------------
+
+    /**
+     * Read a text Memo
+     * @param bytes Bytes
+     * @param off Start
+     * @param len Length (without the \n)
+     * @return True if it had the four parts
+     */
+    public boolean tokenize(byte[] bytes, int off, int len) {
+        mBytes = bytes;
+        final int end = off + len;
+
+        final int s1 = indexOf(bytes, off, end);
+        final int s2 = indexOf(bytes, s1 + 1, end);
+        final int s3 = indexOf(bytes, s2 + 1, end);
+        if (s1 >= end || s2 >= end || s3 >= end || indexOf(bytes, s3 + 1, end) < end) {
+            mAction = ACTION.UNKNOWN;
+            mMode = MODE.UNKNOWN;
+            return false;
+        }
+
+        mAction = matchAction(bytes, off, s1);
+        mMode = matchMode(bytes, s1 + 1, s2);
+        mActionStr = null;
+        mModeStr = null;
+        setTextValue(0, s2 + 1, s3);
+        setTextValue(1, s3 + 1, end);
+
+        return true;
+    }
+
+    /**
+     * Read a binary Memo (MemoCodec frame)
+     * Every field is checked against the frame length before it's read
+     * @param bytes Bytes
+     * @param off Start of the frame (after the length)
+     * @param len Length of the frame
+     * @return True if a valid frame (false => truncated or unknown value type)
+     */
+    public boolean tokenizeFrame(byte[] bytes, int off, int len) {
+        mBytes = bytes;
+        mAction = ACTION.UNKNOWN;
+        mMode = MODE.UNKNOWN;
+        mActionStr = null;
+        mModeStr = null;
+        final int end = off + len;
+        if (off < 0 || len < 0 || end > bytes.length) return false;
+        int pos = off;
+
+        // Action/mode
+        if (pos + 1 > end) return false;
+        final int actionOp = bytes[pos++] & 0xFF;
+        if (actionOp == 0) {
+            if (pos + 2 > end) return false;
+            final int strLen = getShort(bytes, pos);
+            if (pos + 2 + strLen > end) return false;
+            mActionStr = new String(bytes, pos + 2, strLen, StandardCharsets.UTF_8);
+            pos += 2 + strLen;
+        } else {
+            mAction = (actionOp <= ACTIONS.length - 1) ? ACTIONS[actionOp - 1] : ACTION.UNKNOWN;
+        }
+
+        if (pos + 1 > end) return false;
+        final int modeOp = bytes[pos++] & 0xFF;
+        if (modeOp == 0) {
+            if (pos + 2 > end) return false;
+            final int strLen = getShort(bytes, pos);
+            if (pos + 2 + strLen > end) return false;
+            mModeStr = new String(bytes, pos + 2, strLen, StandardCharsets.UTF_8);
+            pos += 2 + strLen;
+        } else {
+            mMode = (modeOp <= MODES.length - 1) ? MODES[modeOp - 1] : MODE.UNKNOWN;
+        }
+
+        // Values
+        for (int vi = 0; vi < 2; vi++) {
+            if (pos + 1 > end) return false;
+            final byte type = bytes[pos++];
+            mTypes[vi] = type;
+            switch (type) {
+                case INT -> {
+                    if (pos + 4 > end) return false;
+                    mLongs[vi] = getInt(bytes, pos);
+                    pos += 4;
+                }
+                case LONG -> {
+                    if (pos + 8 > end) return false;
+                    mLongs[vi] = getLong(bytes, pos);
+                    pos += 8;
+                }
+                case DOUBLE -> {
+                    if (pos + 8 > end) return false;
+                    mDoubles[vi] = Double.longBitsToDouble(getLong(bytes, pos));
+                    pos += 8;
+                }
+                case STRING -> {
+                    if (pos + 2 > end) return false;
+                    final int strLen = getShort(bytes, pos);
+                    if (pos + 2 + strLen > end) return false;
+                    mStarts[vi] = pos + 2;
+                    mEnds[vi] = pos + 2 + strLen;
+                    pos += 2 + strLen;
+                }
+                case NONE -> {}
+                default -> {
+                    mTypes[vi] = NONE;
+                    return false; // Unknown value type
+                }
+            }
+        }
+
+        return true;
+    }
+
+    public ACTION getAction() {
+        return mAction;
+    }
+
+    public MODE getMode() {
+        return mMode;
+    }
+
+    /**
+     * Check if a value is set (not "-")
+     * @param valInd Index of the value (1 or 2)
+     * @return True if set
+     */
+    public boolean hasValue(int valInd) {
+        return mTypes[valInd - 1] != NONE;
+    }
+
+    /**
+     * Get a value as long (parsed from the bytes, if text)
+     * @param valInd Index of the value (1 or 2)
+     * @return long
+     * @throws NumberFormatException If not an integer
+     */
+    public long getLongValue(int valInd) {
+        final int vi = valInd - 1;
+        return switch (mTypes[vi]) {
+            case INT, LONG -> mLongs[vi];
+            case DOUBLE -> (long) mDoubles[vi];
+            case STRING -> parseLong(mBytes, mStarts[vi], mEnds[vi]);
+            default -> throw new NumberFormatException("No value");
+        };
+    }
+
+    public int getIntValue(int valInd) {
+        return (int) getLongValue(valInd);
+    }
+
+    /**
+     * Get a value as double (parsed from the bytes, if text)
+     * @param valInd Index of the value (1 or 2)
+     * @return double
+     * @throws NumberFormatException If not a number
+     */
+    public double getDblValue(int valInd) {
+        final int vi = valInd - 1;
+        return switch (mTypes[vi]) {
+            case INT, LONG -> mLongs[vi];
+            case DOUBLE -> mDoubles[vi];
+            case STRING -> parseDouble(mBytes, mStarts[vi], mEnds[vi]);
+            default -> throw new NumberFormatException("No value");
+        };
+    }
+
+    /**
+     * Get a value as String (creates the String)
+     * @param valInd Index of the value (1 or 2)
+     * @return String ("-" if not set)
+     */
+    public String getStrValue(int valInd) {
+        final int vi = valInd - 1;
+        return switch (mTypes[vi]) {
+            case INT, LONG -> String.valueOf(mLongs[vi]);
+            case DOUBLE -> String.valueOf(mDoubles[vi]);
+            case STRING -> new String(mBytes, mStarts[vi], mEnds[vi] - mStarts[vi], StandardCharsets.UTF_8);
+            default -> "-";
+        };
+    }
+
+    /**
+     * Get the typed value (creates the object)
+     * @param valInd Index of the value (1 or 2)
+     * @return Integer/Long/Double/String or null if not set
+     */
+    Object getRawValue(int valInd) {
+        final int vi = valInd - 1;
+        return switch (mTypes[vi]) {
+            case INT -> (int) mLongs[vi];
+            case LONG -> mLongs[vi];
+            case DOUBLE -> mDoubles[vi];
+            case STRING -> getStrValue(valInd);
+            default -> null;
+        };
+    }
+
+    /**
+     * Create a Memo of the read values
+     * @return Memo
+     */
+    public Memo toMemo() {
+        final Memo result = new Memo();
+        result.setAction(mActionStr != null ? mActionStr : mAction.getStr());
+        result.setMode(mModeStr != null ? mModeStr : mMode.getStr());
+        result.setValue(1, getRawValue(1));
+        result.setValue(2, getRawValue(2));
+
+        return result;
+    }
+
+    private void setTextValue(int vi, int start, int end) {
+        mStarts[vi] = start;
+        mEnds[vi] = end;
+        mTypes[vi] = (end - start == 1 && mBytes[start] == '-') ? NONE : STRING;
+    }
+
+    private static int indexOf(byte[] bytes, int from, int end) {
+        for (int bi = from; bi < end; bi++) {
+            if (bytes[bi] == SEP) return bi;
+        }
+
+        return end;
+    }
+
+    private static ACTION matchAction(byte[] bytes, int start, int end) {
+        for (int ai = 0; ai < ACTIONS.length - 1; ai++) {
+            if (matches(ACTIONS[ai].bytes, bytes, start, end)) return ACTIONS[ai];
+        }
+
+        return ACTION.UNKNOWN;
+    }
+
+    private static MODE matchMode(byte[] bytes, int start, int end) {
+        for (int mi = 0; mi < MODES.length - 1; mi++) {
+            if (matches(MODES[mi].bytes, bytes, start, end)) return MODES[mi];
+        }
+
+        return MODE.UNKNOWN;
+    }
+
+    private static boolean matches(byte[] name, byte[] bytes, int start, int end) {
+        if (end - start != name.length) return false;
+        for (int bi = 0; bi < name.length; bi++) {
+            if (name[bi] != bytes[start + bi]) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Parse a decimal integer
+     * @throws NumberFormatException If not an integer
+     */
+    static long parseLong(byte[] bytes, int start, int end) {
+        if (start >= end) throw new NumberFormatException("Empty value");
+
+        final boolean negative = bytes[start] == '-';
+        int bi = (negative || bytes[start] == '+') ? start + 1 : start;
+        if (bi == end || end - bi > 18) { // No digits or may overflow => slow path
+            return Long.parseLong(new String(bytes, start, end - start, StandardCharsets.US_ASCII));
+        }
+
+        long result = 0;
+        for (; bi < end; bi++) {
+            final int digit = bytes[bi] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException(new String(bytes, start, end - start, StandardCharsets.US_ASCII));
+            }
+            result = result * 10 + digit;
+        }
+
+        return negative ? -result : result;
+    }
+
+    /**
+     * Parse a decimal number
+     * Up to 15 digits without exponent: exact (one correctly rounded division); otherwise Double.parseDouble
+     * @throws NumberFormatException If not a number
+     */
+    static double parseDouble(byte[] bytes, int start, int end) {
+        if (start >= end) throw new NumberFormatException("Empty value");
+
+        final boolean negative = bytes[start] == '-';
+        int bi = (negative || bytes[start] == '+') ? start + 1 : start;
+
+        long mantissa = 0;
+        int nDigits = 0;
+        int nFraction = -1; // -1 => no point yet
+        for (; bi < end; bi++) {
+            final byte b = bytes[bi];
+            if (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                nDigits++;
+                if (nFraction >= 0) nFraction++;
+                if (nDigits > 15) break;
+            } else if (b == '.' && nFraction < 0) {
+                nFraction = 0;
+            } else {
+                break;
+            }
+        }
+
+        if (bi < end || nDigits == 0) { // Exponent, too many digits, etc. => slow path
+            return Double.parseDouble(new String(bytes, start, end - start, StandardCharsets.US_ASCII));
+        }
+
+        final double result = (nFraction > 0) ? mantissa / (double) POW10[nFraction] : mantissa;
+        return negative ? -result : result;
+    }
+
+    private static int getShort(byte[] bytes, int pos) {
+        return ((bytes[pos] & 0xFF) << 8) | (bytes[pos + 1] & 0xFF);
+    }
+
+    private static int getInt(byte[] bytes, int pos) {
+        return ((bytes[pos] & 0xFF) << 24) | ((bytes[pos + 1] & 0xFF) << 16)
+                | ((bytes[pos + 2] & 0xFF) << 8) | (bytes[pos + 3] & 0xFF);
+    }
+
+    private static long getLong(byte[] bytes, int pos) {
+        return ((long) getInt(bytes, pos) << 32) | (getInt(bytes, pos + 4) & 0xFFFFFFFFL);
+    }
+}